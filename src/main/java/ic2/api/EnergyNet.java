@@ -42,6 +42,9 @@ public final class EnergyNet {
     }
   }
   
+  // Returns the energy that couldn't be emitted. With batched distribution or the flow solver enabled the energy is only
+  // sent at the end of the tick, the return value is then what was left over from the previous tick. Sources that
+  // implement IEnergyRefundable get that credited through refundEnergy instead and 0 is returned.
   public int emitEnergyFrom(IEnergySource ienergysource, int i) {
     try {
       return (Integer) Class.forName(getPackage() + ".common.EnergyNet")
@@ -52,6 +55,26 @@ public final class EnergyNet {
     }
   }
   
+  // Emits up to j packets of i EU, returns like emitEnergyFrom(IEnergySource, int)
+  public int emitEnergyFrom(IEnergySource ienergysource, int i, int j) {
+    try {
+      return (Integer) Class.forName(getPackage() + ".common.EnergyNet")
+          .getMethod("emitEnergyFrom", IEnergySource.class, Integer.TYPE, Integer.TYPE)
+          .invoke(this.energyNetInstance, ienergysource, i, j);
+    } catch (Exception var5) {
+      throw new RuntimeException(var5);
+    }
+  }
+  
+  public void onDemandChanged(IEnergySink ienergysink) {
+    try {
+      Class.forName(getPackage() + ".common.EnergyNet").getMethod("onDemandChanged", IEnergySink.class)
+          .invoke(this.energyNetInstance, ienergysink);
+    } catch (Exception var3) {
+      throw new RuntimeException(var3);
+    }
+  }
+  
   public long getTotalEnergyConducted(TileEntity tileentity) {
     try {
       return (Long) Class.forName(getPackage() + ".common.EnergyNet")
@@ -0,0 +1,6 @@
+package ic2.api;
+
+// Sinks implementing this call EnergyNet.onDemandChanged whenever demandsEnergy() changes outside of injectEnergy,
+// the energy net then stops polling them. Calls without a change are ignored, so sinks may simply call it every tick.
+public interface IEnergyDemandNotifier extends IEnergySink {
+}
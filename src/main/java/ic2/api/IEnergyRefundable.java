@@ -0,0 +1,7 @@
+package ic2.api;
+
+// Sources implementing this get energy a batched emit couldn't deliver credited back through refundEnergy at the end of
+// the tick, or when they leave the energy net. emitEnergyFrom then returns 0 for them in batched modes.
+public interface IEnergyRefundable extends IEnergySource {
+  void refundEnergy(int i);
+}
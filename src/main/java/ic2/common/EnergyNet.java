@@ -2,22 +2,60 @@ package ic2.common;
 
 import ic2.api.*;
 import ic2.platform.Platform;
+import net.minecraft.server.Chunk;
 import net.minecraft.server.EntityLiving;
 import net.minecraft.server.TileEntity;
 import net.minecraft.server.World;
+import net.minecraft.server.mod_IC2;
 
+import java.io.File;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 
 public final class EnergyNet {
   public static final double minConductionLoss = 1.0E-4D;
-  private static final Map<World, EnergyNet> worldToEnergyNetMap = new HashMap<>();
+  private static final int solverPasses = 2;
+  private static final int rebalanceInterval = 20;
+  private static final int unloadedNodeTimeout = 6000; // Ticks a chunk may stay unloaded before its nodes are removed
+  private static final ThreadLocal<EnergyNetDiscovery> workerDiscovery = ThreadLocal.withInitial(EnergyNetDiscovery::new);
+  private static ExecutorService discoveryExecutor = null;
+  private static ForkJoinPool partitionPool = null;
   private final World world;
   private final HashMap<IEnergySource, List<EnergyPath>> energySourceToEnergyPathMap = new HashMap<>();
+  private final EnergyNetPositionMap<Set<IEnergySource>> positionToEnergySourceMap = new EnergyNetPositionMap<>();
+  private final LinkedHashMap<IEnergySource, EnergyOffer> energySourceToEnergyOfferMap = new LinkedHashMap<>();
+  private final HashMap<IEnergySource, EnergyNetAggregate> energySourceToAggregateMap = new HashMap<>();
+  private final HashMap<IEnergySource, EnergyOffer> energySourceToAggregateOfferMap = new HashMap<>();
+  private final List<EnergyNetAggregate> pendingAggregates = new ArrayList<>();
+  private final HashMap<IEnergySource, Long> prunedSourceToRebalanceTimeMap = new HashMap<>(); // Tables cut to the budget
+  private final HashMap<IEnergySource, Integer> prunedSourceToComponentVersionMap = new HashMap<>();
   private final HashMap<EntityLiving, Integer> entityLivingToShockEnergyMap = new HashMap<>();
+  private final List<EnergyPath> hotPaths = new ArrayList<>(); // Conducted more than their insulation absorbs this tick
+  private final EnergyNetShockIndex shockIndex = new EnergyNetShockIndex();
+  private final EnergyNetGraph graph = new EnergyNetGraph(this::onChainBroken);
+  private final EnergyNetDiscovery discovery = new EnergyNetDiscovery();
+  private final EnergyNetPositionMap<TileEntity> pendingAdditions = new EnergyNetPositionMap<>();
+  private final EnergyNetPositionMap<TileEntity> pendingRemovals = new EnergyNetPositionMap<>();
+  private final Set<IEnergySource> suspendedSources = new HashSet<>();
+  private final Set<IEnergySource> detachedSources = new HashSet<>(); // Paths cross an unloaded chunk
+  private final Set<IEnergySource> boundarySources = new HashSet<>(); // Discovery stopped at an unloaded chunk
+  private final Set<IEnergySource> pendingDiscoveries = new HashSet<>();
+  private final Set<IEnergySource> outdatedDiscoveries = new HashSet<>(); // Invalidated again while being discovered
+  private final LinkedHashMap<EnergyNetGraph.Node, Long> unloadedNodeToTimeMap = new LinkedHashMap<>();
+  private final ConcurrentLinkedQueue<DiscoveryResult> discoveryResults = new ConcurrentLinkedQueue<>();
+  private EnergyNetPathCache pathCache = null;
   
   private EnergyNet(World world) {
     this.world = world;
+    File file = mod_IC2.energyNetPersistPaths ? mod_IC2.getWorldDirectory(world) : null;
+    if (file != null) {
+      pathCache = new EnergyNetPathCache(new File(file, "ic2_energynet_" + world.worldProvider.dimension + ".dat"));
+      pathCache.load();
+    }
   }
   
   public static EnergyNet getForWorld(World world) {
@@ -26,16 +64,28 @@ public final class EnergyNet {
       return null;
     }
     else {
-      if (!worldToEnergyNetMap.containsKey(world)) {
-        worldToEnergyNetMap.put(world, new EnergyNet(world));
+      WorldData worldData = WorldData.get(world);
+      if (worldData.energyNet == null) {
+        worldData.energyNet = new EnergyNet(world);
       }
-      return worldToEnergyNetMap.get(world);
+      return worldData.energyNet;
     }
   }
   
-  public static void onTick(World world) { //Shock entities
-    Platform.profilerStartSection("Shocking");
+  private static EnergyNet getIfPresent(World world) {
+    WorldData worldData = WorldData.peek(world);
+    return worldData == null ? null : worldData.energyNet;
+  }
+  
+  public static void onTick(World world) {
     EnergyNet energyNet = getForWorld(world);
+    Platform.profilerStartSection("Topology");
+    energyNet.applyTopologyChanges();
+    Platform.profilerEndStartSection("Discovery");
+    energyNet.applyDiscoveryResults();
+    Platform.profilerEndStartSection("Shocking");
+    energyNet.heatConductors();
+    energyNet.shockIndex.shock(world.entityList, energyNet.entityLivingToShockEnergyMap);
     for (EntityLiving entityLiving : energyNet.entityLivingToShockEnergyMap.keySet()) {
       int i = (energyNet.entityLivingToShockEnergyMap.get(entityLiving) + 63) / 64;
       if (entityLiving.isAlive()) {
@@ -46,410 +96,1135 @@ public final class EnergyNet {
     Platform.profilerEndSection();
   }
   
+  public static void onWorldSave(World world) {
+    EnergyNet energyNet = getIfPresent(world);
+    if (energyNet != null && energyNet.pathCache != null) {
+      energyNet.pathCache.save(world, energyNet.graph, energyNet.energySourceToEnergyPathMap);
+    }
+  }
+  
+  public static void onChunkUnload(World world, Chunk chunk) {
+    EnergyNet energyNet = getIfPresent(world);
+    if (energyNet != null) {
+      energyNet.unloadChunk(chunk);
+    }
+  }
+  
+  public static void onTickEnd(World world) { // Distribute batched energy offers
+    EnergyNet energyNet = getForWorld(world);
+    if (energyNet != null && !energyNet.energySourceToEnergyOfferMap.isEmpty()) {
+      energyNet.distributeOffers();
+    }
+    if (energyNet != null && !energyNet.pendingAggregates.isEmpty()) {
+      energyNet.distributeAggregates();
+    }
+  }
+  
+  // Called by IEnergyDemandNotifier sinks when their demand changed
+  public void onDemandChanged(IEnergySink iEnergySink) {
+    EnergyNetGraph.Node node = graph.getNode((TileEntity) iEnergySink);
+    if (node != null) {
+      graph.setDemanding(node, iEnergySink.demandsEnergy());
+    }
+  }
+  
+  // Topology changes are queued per position and applied together at the start of the next tick
   public void addTileEntity(TileEntity tileentity) {
     if (tileentity instanceof IEnergyTile && !((IEnergyTile) tileentity).isAddedToEnergyNet()) {
-      if (tileentity instanceof IEnergyAcceptor) {
-        List<EnergyPath> list = discover(tileentity, true, Integer.MAX_VALUE);
-        for (EnergyPath energyPath : list) {
-          IEnergySource ienergysource = (IEnergySource) energyPath.target;
-          if (energySourceToEnergyPathMap.containsKey(ienergysource) &&
-              (double) ienergysource.getMaxEnergyOutput() > energyPath.loss) {
-            energySourceToEnergyPathMap.remove(ienergysource);
+      pendingAdditions.put(EnergyNetGraph.pack(tileentity), tileentity);
+    }
+  }
+  
+  public void removeTileEntity(TileEntity tileEntity) {
+    if (tileEntity instanceof IEnergyTile && ((IEnergyTile) tileEntity).isAddedToEnergyNet()) {
+      long position = EnergyNetGraph.pack(tileEntity);
+      if (pendingAdditions.get(position) == tileEntity) {
+        pendingAdditions.remove(position);
+      }
+      if (!graph.contains(tileEntity)) {
+        return;
+      }
+      pendingRemovals.put(position, tileEntity);
+      EnergyNetGraph.Node node = graph.getNode(tileEntity);
+      graph.setRemoving(node);
+      
+      // Paths using the tile are dropped right away, their sources pause until the removal is applied
+      if (tileEntity instanceof IEnergySource) {
+        removeEnergyPaths((IEnergySource) tileEntity);
+        refund(energySourceToEnergyOfferMap.remove(tileEntity));
+        energySourceToAggregateMap.remove(tileEntity);
+        refund(energySourceToAggregateOfferMap.remove(tileEntity));
+        prunedSourceToRebalanceTimeMap.remove(tileEntity);
+        prunedSourceToComponentVersionMap.remove(tileEntity);
+      }
+      Set<IEnergySource> energySources = positionToEnergySourceMap.remove(position);
+      if (node.chain != null && !node.chain.sources.isEmpty()) { // Paths along chains are indexed by the chain
+        energySources = energySources == null ? new HashSet<>() : energySources;
+        energySources.addAll(node.chain.sources);
+      }
+      if (energySources != null) {
+        dropEnergyPaths(tileEntity, energySources);
+      }
+    }
+  }
+  
+  private void dropEnergyPaths(TileEntity tileEntity, Set<IEnergySource> energySources) {
+    for (IEnergySource iEnergySource : energySources) {
+      if (tileEntity instanceof IEnergyConductor) {
+        removeEnergyPaths(iEnergySource);
+        suspendedSources.add(iEnergySource);
+      }
+      else { // Sinks only drop their own path entries
+        removeEnergyPaths(iEnergySource, energyPath -> energyPath.target == tileEntity);
+      }
+    }
+  }
+  
+  // Tile entities of the chunk are kept as boundary nodes, sources with paths through them pause until it loads again
+  private void unloadChunk(Chunk chunk) {
+    for (Object object : chunk.tileEntities.values()) {
+      if (!(object instanceof IEnergyTile)) {
+        continue;
+      }
+      TileEntity tileEntity = (TileEntity) object;
+      long position = EnergyNetGraph.pack(tileEntity);
+      if (pendingAdditions.get(position) == tileEntity) {
+        pendingAdditions.remove(position);
+      }
+      EnergyNetGraph.Node node = graph.getNode(tileEntity);
+      if (node == null || pendingRemovals.get(position) == tileEntity) {
+        continue;
+      }
+      graph.setUnloaded(node, true);
+      unloadedNodeToTimeMap.putIfAbsent(node, world.getTime());
+      if (tileEntity instanceof IEnergySource) {
+        detachedSources.add((IEnergySource) tileEntity);
+        refund(energySourceToEnergyOfferMap.remove(tileEntity));
+      }
+      detachedSources.addAll(getIndexedSources(node));
+    }
+  }
+  
+  // Takes over the node of the unloaded predecessor instead of rebuilding the network around it
+  private void rebind(EnergyNetGraph.Node node, TileEntity tileEntity) {
+    TileEntity previous = node.tileEntity;
+    graph.rebind(node, tileEntity);
+    unloadedNodeToTimeMap.remove(node);
+    if (previous instanceof IEnergySource) {
+      rebindSource((IEnergySource) previous, (IEnergySource) tileEntity);
+    }
+    Set<IEnergySource> energySources = getIndexedSources(node);
+    for (IEnergySource iEnergySource : energySources) {
+      if (previous instanceof IEnergySink) {
+        for (EnergyPath energyPath : energySourceToEnergyPathMap.getOrDefault(iEnergySource,
+            Collections.emptyList())) {
+          if (energyPath.target == previous) {
+            energyPath.target = tileEntity;
           }
         }
       }
-    }
-    else {
-      if (tileentity instanceof IEnergyTile) {
-        ((IEnergyTile) tileentity).isAddedToEnergyNet();
+      if (detachedSources.contains(iEnergySource) && !touchesUnloaded(iEnergySource)) {
+        detachedSources.remove(iEnergySource);
       }
     }
   }
   
-  public void removeTileEntity(TileEntity tileEntity) {
-    if (tileEntity instanceof IEnergyTile && ((IEnergyTile) tileEntity).isAddedToEnergyNet()) {
-      if (tileEntity instanceof IEnergyAcceptor) {
-        for (EnergyPath energyPath : discover(tileEntity, true, Integer.MAX_VALUE)) {
-          IEnergySource iEnergySource = (IEnergySource) energyPath.target;
-          if (energySourceToEnergyPathMap.containsKey(iEnergySource) &&
-              iEnergySource.getMaxEnergyOutput() > energyPath.loss) {
-            energySourceToEnergyPathMap.remove(iEnergySource);
+  // Moves everything kept per source over to the reloaded tile entity
+  private void rebindSource(IEnergySource previous, IEnergySource iEnergySource) {
+    boolean boundaryReached = boundarySources.contains(previous);
+    Long time = prunedSourceToRebalanceTimeMap.remove(previous);
+    if (time != null) {
+      prunedSourceToRebalanceTimeMap.put(iEnergySource, time);
+    }
+    prunedSourceToComponentVersionMap.remove(previous); // Rebinding changed the component anyway
+    List<EnergyPath> energyPaths = energySourceToEnergyPathMap.get(previous);
+    if (energyPaths != null) {
+      removeEnergyPaths(previous);
+      putEnergyPaths(iEnergySource, energyPaths, boundaryReached);
+    }
+    detachedSources.remove(previous);
+    if (suspendedSources.remove(previous)) {
+      suspendedSources.add(iEnergySource);
+    }
+    rebindOffer(energySourceToEnergyOfferMap, previous, iEnergySource);
+    rebindOffer(energySourceToAggregateOfferMap, previous, iEnergySource);
+    energySourceToAggregateMap.remove(previous); // Collected again, rebinding changed the graph version
+    if (pendingDiscoveries.remove(previous)) { // The result for the previous tile entity is discarded
+      outdatedDiscoveries.remove(previous);
+      requestEnergyPaths(iEnergySource);
+    }
+  }
+  
+  private static void rebindOffer(Map<IEnergySource, EnergyOffer> energySourceToEnergyOfferMap, IEnergySource previous,
+                                  IEnergySource iEnergySource) {
+    EnergyOffer energyOffer = energySourceToEnergyOfferMap.remove(previous);
+    if (energyOffer != null) {
+      energyOffer.source = iEnergySource;
+      energySourceToEnergyOfferMap.put(iEnergySource, energyOffer);
+    }
+  }
+  
+  private Set<IEnergySource> getIndexedSources(EnergyNetGraph.Node node) {
+    Set<IEnergySource> energySources = new HashSet<>();
+    Set<IEnergySource> indexedSources = positionToEnergySourceMap.get(node.position);
+    if (indexedSources != null) {
+      energySources.addAll(indexedSources);
+    }
+    if (node.chain != null) {
+      energySources.addAll(node.chain.sources);
+    }
+    return energySources;
+  }
+  
+  private boolean touchesUnloaded(IEnergySource iEnergySource) {
+    EnergyNetGraph.Node node = graph.getNode((TileEntity) iEnergySource);
+    List<EnergyPath> energyPaths = energySourceToEnergyPathMap.get(iEnergySource);
+    if (node == null || energyPaths == null) {
+      return false;
+    }
+    if (node.unloaded) {
+      return true;
+    }
+    for (EnergyPath energyPath : energyPaths) {
+      if (energyPath.targetNode == null || energyPath.targetNode.unloaded) {
+        return true;
+      }
+      for (long position : energyPath.conductors) {
+        EnergyNetGraph.Node conductor = graph.getNode(position);
+        if (conductor == null || conductor.unloaded) {
+          return true;
+        }
+      }
+      for (EnergyNetGraph.Chain chain : energyPath.chains) {
+        for (EnergyNetGraph.Node conductor : chain.nodes) {
+          if (conductor.unloaded) {
+            return true;
           }
         }
-        List<EnergyPath> energyPathList = discover(tileEntity, true, Integer.MAX_VALUE);
-        Iterator<EnergyPath> energyPathIterator = energyPathList.iterator();
-        label55:
-        while (true) {
-          while (true) {
-            EnergyPath energyPath;
-            IEnergySource iEnergySource;
-            do {
-              do {
-                if (!energyPathIterator.hasNext()) {
-                  break label55;
-                }
-                energyPath = energyPathIterator.next();
-                iEnergySource = (IEnergySource) energyPath.target;
-              } while (!energySourceToEnergyPathMap.containsKey(iEnergySource));
-            } while ((double) iEnergySource.getMaxEnergyOutput() <= energyPath.loss);
-            if (tileEntity instanceof IEnergyConductor) {
-              energySourceToEnergyPathMap.remove(iEnergySource);
-            }
-            else {
-              Iterator<EnergyPath> iterator1 = energySourceToEnergyPathMap.get(iEnergySource).iterator();
-              while (iterator1.hasNext()) {
-                if ((iterator1.next()).target == tileEntity) {
-                  iterator1.remove();
-                  break;
-                }
-              }
+      }
+    }
+    return false;
+  }
+  
+  // Nodes whose chunk stayed unloaded for unloadedNodeTimeout ticks are removed with everything using them
+  private void removeExpiredNodes() {
+    Iterator<Map.Entry<EnergyNetGraph.Node, Long>> iterator = unloadedNodeToTimeMap.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<EnergyNetGraph.Node, Long> entry = iterator.next();
+      if (world.getTime() - entry.getValue() < unloadedNodeTimeout) {
+        break;
+      }
+      iterator.remove();
+      EnergyNetGraph.Node node = entry.getKey();
+      if (node.unloaded && graph.getNode(node.position) == node) {
+        removeTileEntity(node.tileEntity);
+      }
+    }
+  }
+  
+  private void applyTopologyChanges() {
+    if (!unloadedNodeToTimeMap.isEmpty()) {
+      removeExpiredNodes();
+    }
+    if (!pendingRemovals.isEmpty()) {
+      // Sources discovered after the removal was queued may have found paths through the tile meanwhile
+      pendingRemovals.forEachValue(tileEntity -> {
+        EnergyNetGraph.Node node = graph.getNode(tileEntity);
+        Set<IEnergySource> energySources = node == null ? Collections.emptySet() : getIndexedSources(node);
+        energySources.remove(tileEntity);
+        graph.remove(tileEntity);
+        dropEnergyPaths(tileEntity, energySources);
+      });
+      pendingRemovals.clear();
+    }
+    if (!pendingAdditions.isEmpty()) {
+      List<TileEntity> acceptors = new ArrayList<>();
+      List<EnergyNetGraph.Node> reboundNodes = new ArrayList<>();
+      pendingAdditions.forEachValue(tileEntity -> {
+        if (!tileEntity.l() && ((IEnergyTile) tileEntity).isAddedToEnergyNet()) {
+          EnergyNetGraph.Node stale = graph.getNode(EnergyNetGraph.pack(tileEntity));
+          if (stale != null && stale.unloaded) {
+            if (EnergyNetGraph.canRebind(stale, tileEntity)) {
+              rebind(stale, tileEntity);
+              reboundNodes.add(stale);
+              return;
             }
+            removeTileEntity(stale.tileEntity); // Changed while unloaded, drop everything using the old one
           }
+          graph.add(tileEntity);
+          if (tileEntity instanceof IEnergyAcceptor) {
+            acceptors.add(tileEntity);
+          }
+        }
+      });
+      pendingAdditions.clear();
+      
+      // New acceptors may open shorter or additional paths, components are collected after all merges happened
+      Set<EnergyNetGraph.Component> components = Collections.newSetFromMap(new IdentityHashMap<>());
+      for (TileEntity tileEntity : acceptors) {
+        EnergyNetGraph.Node node = graph.getNode(tileEntity);
+        if (node != null) {
+          components.add(node.component);
+        }
+      }
+      for (EnergyNetGraph.Component component : components) {
+        invalidateSources(component);
+      }
+      
+      // Reloaded chunks only extend the networks of sources whose discovery stopped at an unloaded chunk
+      components.clear();
+      for (EnergyNetGraph.Node node : reboundNodes) {
+        components.add(node.component);
+      }
+      for (IEnergySource iEnergySource : new ArrayList<>(boundarySources)) {
+        EnergyNetGraph.Node node = graph.getNode((TileEntity) iEnergySource);
+        if (node != null && components.contains(node.component)) {
+          invalidateSource(iEnergySource);
         }
       }
     }
-    else if (tileEntity instanceof IEnergySource) {
-      energySourceToEnergyPathMap.remove(tileEntity);
+    suspendedSources.clear();
+  }
+  
+  private void invalidateSources(EnergyNetGraph.Component component) {
+    for (IEnergySource iEnergySource : component.sources) {
+      invalidateSource(iEnergySource);
     }
   }
   
-  public int emitEnergyFrom(IEnergySource ienergysource, int i) {
-    if (ienergysource == null || !ienergysource.isAddedToEnergyNet()) {
-      return i;
+  private void invalidateSource(IEnergySource iEnergySource) {
+    if (mod_IC2.energyNetAsyncDiscovery && energySourceToEnergyPathMap.containsKey(iEnergySource)) {
+      requestEnergyPaths(iEnergySource); // Additions never break a table, it stays in use until replaced
     }
     else {
-      if (!energySourceToEnergyPathMap.containsKey(ienergysource)) {
-        energySourceToEnergyPathMap
-            .put(ienergysource, discover((TileEntity) ienergysource, false, ienergysource.getMaxEnergyOutput()));
+      removeEnergyPaths(iEnergySource);
+    }
+  }
+  
+  // Discovers the paths of a source on a worker thread against a snapshot of its network
+  private void requestEnergyPaths(IEnergySource iEnergySource) {
+    if (pendingDiscoveries.contains(iEnergySource)) {
+      outdatedDiscoveries.add(iEnergySource);
+      return;
+    }
+    EnergyNetGraph.Node node = graph.getNode((TileEntity) iEnergySource);
+    if (node == null) {
+      return;
+    }
+    EnergyNetGraph.Node start = graph.snapshot(node.component).get(node.position);
+    int maxEnergyOutput = iEnergySource.getMaxEnergyOutput();
+    pendingDiscoveries.add(iEnergySource);
+    getDiscoveryExecutor().execute(() -> {
+      List<EnergyPath> energyPaths = null;
+      boolean boundaryReached = false;
+      try {
+        EnergyNetDiscovery energyNetDiscovery = workerDiscovery.get();
+        energyPaths = energyNetDiscovery.discover(start, false, maxEnergyOutput, null);
+        boundaryReached = energyNetDiscovery.boundaryReached();
       }
-      if (energySourceToEnergyPathMap.get(ienergysource).size() < 1) { // Remove empty entries
-        energySourceToEnergyPathMap.remove(ienergysource);
-        return i;
+      finally {
+        discoveryResults.add(new DiscoveryResult(iEnergySource, energyPaths, boundaryReached));
+      }
+    });
+  }
+  
+  // Swaps finished discoveries in, results that lost a tile meanwhile are discarded and requested again
+  private void applyDiscoveryResults() {
+    DiscoveryResult discoveryResult;
+    while ((discoveryResult = discoveryResults.poll()) != null) {
+      IEnergySource iEnergySource = discoveryResult.source;
+      pendingDiscoveries.remove(iEnergySource);
+      boolean outdated = outdatedDiscoveries.remove(iEnergySource);
+      if (!graph.contains((TileEntity) iEnergySource)) {
+        continue;
+      }
+      if (discoveryResult.energyPaths == null) { // Worker failed, repeat on this thread so errors surface here
+        putEnergyPaths(iEnergySource, discover((TileEntity) iEnergySource, false, iEnergySource.getMaxEnergyOutput()),
+            discovery.boundaryReached());
+      }
+      else if (outdated || !isCurrent(discoveryResult.energyPaths)) {
+        requestEnergyPaths(iEnergySource);
       }
       else {
-        energySourceToEnergyPathMap.get(ienergysource).removeIf(energyPath -> energyPath.conductors == null
-            || energyPath.conductors.size() == 0);
-      }
-      int j = 0;
-      Vector<EnergyPath> vector = new Vector<>();
-      double d = 0.0D;
-      for (EnergyPath energypath : energySourceToEnergyPathMap.get(ienergysource)) {
-        if (!EnergyNet.class.desiredAssertionStatus() && !(energypath.target instanceof IEnergySink)) {
-          throw new AssertionError();
-        }
-        IEnergySink ienergysink = (IEnergySink) energypath.target;
-        if (ienergysink.demandsEnergy()) {
-          d += 1.0D / energypath.loss;
-          if (!vector.contains(energypath)) //Added to prevent duplicates.
-          {
-            vector.add(energypath);
+        putEnergyPaths(iEnergySource, discoveryResult.energyPaths, discoveryResult.boundaryReached);
+      }
+    }
+  }
+  
+  private boolean isCurrent(List<EnergyPath> energyPaths) {
+    for (EnergyPath energyPath : energyPaths) {
+      if (!graph.contains(energyPath.target)) {
+        return false;
+      }
+      for (long position : energyPath.conductors) {
+        if (graph.getNode(position) == null) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+  
+  private static ExecutorService getDiscoveryExecutor() {
+    if (discoveryExecutor == null) {
+      discoveryExecutor = Executors.newFixedThreadPool(Math.max(mod_IC2.energyNetDiscoveryThreads, 1), runnable -> {
+        Thread thread = new Thread(runnable, "IC2 EnergyNet Discovery");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return discoveryExecutor;
+  }
+  
+  private void putEnergyPaths(IEnergySource iEnergySource, List<EnergyPath> energyPaths, boolean boundaryReached) {
+    putEnergyPaths(iEnergySource, energyPaths);
+    if (boundaryReached) {
+      boundarySources.add(iEnergySource);
+    }
+  }
+  
+  // Keeps the lowest loss paths to sinks demanding energy right now, then the lowest loss paths to the others
+  private List<EnergyPath> prunedEnergyPaths(List<EnergyPath> energyPaths) {
+    HashMap<IEnergySink, Boolean> sinkToDemandMap = new HashMap<>();
+    List<EnergyPath> sortedEnergyPaths = new ArrayList<>(energyPaths);
+    sortedEnergyPaths.sort(Comparator.comparing((EnergyPath energyPath) -> !demandsEnergy(energyPath, sinkToDemandMap))
+        .thenComparingDouble(energyPath -> energyPath.loss));
+    return new ArrayList<>(sortedEnergyPaths.subList(0, mod_IC2.energyNetMaxSourcePaths));
+  }
+  
+  // Every sink a pruned source kept is full, its table is discovered again to pick the sinks that want energy now.
+  // Happens at most once per rebalanceInterval ticks per source, and only if the network or the demand it is notified
+  // of changed since the table was picked. Networks with polling sinks can't tell, they rebalance on the interval.
+  private void rebalanceEnergyPaths(IEnergySource iEnergySource) {
+    Long time = prunedSourceToRebalanceTimeMap.get(iEnergySource);
+    if (time == null || world.getTime() - time < rebalanceInterval) {
+      return;
+    }
+    EnergyNetGraph.Node node = graph.getNode((TileEntity) iEnergySource);
+    if (node == null || !node.component.pollsDemand() &&
+        prunedSourceToComponentVersionMap.getOrDefault(iEnergySource, -1) == node.component.version) {
+      return;
+    }
+    prunedSourceToRebalanceTimeMap.put(iEnergySource, world.getTime());
+    prunedSourceToComponentVersionMap.put(iEnergySource, node.component.version);
+    invalidateSource(iEnergySource);
+  }
+  
+  // Caches the paths of a source and indexes it by every sink and conductor they pass through. Paths straight into an
+  // adjacent sink are dropped here, once per discovery, instead of on every emit.
+  private void putEnergyPaths(IEnergySource iEnergySource, List<EnergyPath> energyPaths) {
+    removeEnergyPaths(iEnergySource);
+    energyPaths = new ArrayList<>(energyPaths);
+    energyPaths.removeIf(energyPath -> energyPath.conductors.length == 0 && energyPath.chains.length == 0);
+    for (EnergyPath energyPath : energyPaths) {
+      energyPath.targetNode = graph.getNode(energyPath.target);
+    }
+    if (mod_IC2.energyNetMaxSourcePaths > 0 && energyPaths.size() > mod_IC2.energyNetMaxSourcePaths) {
+      energyPaths = prunedEnergyPaths(energyPaths);
+      prunedSourceToRebalanceTimeMap.putIfAbsent(iEnergySource, world.getTime());
+      EnergyNetGraph.Node node = graph.getNode((TileEntity) iEnergySource);
+      if (node != null) {
+        prunedSourceToComponentVersionMap.putIfAbsent(iEnergySource, node.component.version);
+      }
+    }
+    else {
+      prunedSourceToRebalanceTimeMap.remove(iEnergySource);
+      prunedSourceToComponentVersionMap.remove(iEnergySource);
+    }
+    energySourceToEnergyPathMap.put(iEnergySource, energyPaths);
+    for (EnergyPath energyPath : energyPaths) {
+      indexEnergySource(EnergyNetGraph.pack(energyPath.target), iEnergySource);
+      for (long position : energyPath.conductors) {
+        indexEnergySource(position, iEnergySource);
+        EnergyNetGraph.Node node = graph.getNode(position);
+        if (node != null && node.metered) {
+          energyPath.addMeter(node);
+        }
+      }
+      for (EnergyNetGraph.Chain chain : energyPath.chains) {
+        if (chain.valid) {
+          chain.sources.add(iEnergySource);
+        }
+        else {
+          for (EnergyNetGraph.Node node : chain.nodes) {
+            indexEnergySource(node.position, iEnergySource);
           }
-          if (vector.size() >= i) {
-            break;
+        }
+      }
+    }
+    if (touchesUnloaded(iEnergySource)) { // Restored or snapshot tables may cross chunks unloaded meanwhile
+      detachedSources.add(iEnergySource);
+    }
+  }
+  
+  private void removeEnergyPaths(IEnergySource iEnergySource) {
+    detachedSources.remove(iEnergySource);
+    boundarySources.remove(iEnergySource);
+    List<EnergyPath> energyPaths = energySourceToEnergyPathMap.remove(iEnergySource);
+    if (energyPaths == null) {
+      return;
+    }
+    for (EnergyPath energyPath : energyPaths) {
+      unindexEnergySource(EnergyNetGraph.pack(energyPath.target), iEnergySource);
+      for (long position : energyPath.conductors) {
+        unindexEnergySource(position, iEnergySource);
+      }
+      for (EnergyNetGraph.Chain chain : energyPath.chains) {
+        if (chain.valid) {
+          chain.sources.remove(iEnergySource);
+        }
+        else {
+          for (EnergyNetGraph.Node node : chain.nodes) {
+            unindexEnergySource(node.position, iEnergySource);
+          }
+        }
+      }
+    }
+  }
+  
+  // Drops single paths of a source, positions and chains only the dropped paths used stop referring to it
+  private void removeEnergyPaths(IEnergySource iEnergySource, Predicate<EnergyPath> predicate) {
+    List<EnergyPath> energyPaths = energySourceToEnergyPathMap.get(iEnergySource);
+    if (energyPaths == null) {
+      return;
+    }
+    List<EnergyPath> removedEnergyPaths = new ArrayList<>();
+    energyPaths.removeIf(energyPath -> predicate.test(energyPath) && removedEnergyPaths.add(energyPath));
+    if (removedEnergyPaths.isEmpty()) {
+      return;
+    }
+    Set<Long> positions = new HashSet<>();
+    Set<EnergyNetGraph.Chain> chains = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (EnergyPath energyPath : energyPaths) {
+      positions.add(EnergyNetGraph.pack(energyPath.target));
+      for (long position : energyPath.conductors) {
+        positions.add(position);
+      }
+      for (EnergyNetGraph.Chain chain : energyPath.chains) {
+        chains.add(chain);
+        if (!chain.valid) {
+          for (EnergyNetGraph.Node node : chain.nodes) {
+            positions.add(node.position);
           }
         }
       }
-      Iterator<EnergyPath> iterator1 = vector.iterator();
-      while (true) {
-        int conducted;
-        EnergyPath energypath1;
-        do {
-          IEnergySink ienergysink1;
-          int k;
-          int l;
-          do {
-            if (!iterator1.hasNext()) {
-              return i - j;
+    }
+    for (EnergyPath energyPath : removedEnergyPaths) {
+      long target = EnergyNetGraph.pack(energyPath.target);
+      if (!positions.contains(target)) {
+        unindexEnergySource(target, iEnergySource);
+      }
+      for (long position : energyPath.conductors) {
+        if (!positions.contains(position)) {
+          unindexEnergySource(position, iEnergySource);
+        }
+      }
+      for (EnergyNetGraph.Chain chain : energyPath.chains) {
+        if (chain.valid) {
+          if (!chains.contains(chain)) {
+            chain.sources.remove(iEnergySource);
+          }
+        }
+        else {
+          for (EnergyNetGraph.Node node : chain.nodes) {
+            if (!positions.contains(node.position)) {
+              unindexEnergySource(node.position, iEnergySource);
             }
-            energypath1 = iterator1.next();
-            ienergysink1 = (IEnergySink) energypath1.target;
-            k = (int) Math.floor((double) Math.round((double) i / d / energypath1.loss * 100000.0D) / 100000.0D);
-            l = (int) Math.floor(energypath1.loss);
-          } while (k <= l);
-          int i1 = ienergysink1.injectEnergy(energypath1.targetDirection, k - l);
-          j += k - i1;
-          conducted = k - l - i1;
-          energypath1.totalEnergyConducted += conducted;
-//          if (conducted > energypath1.minInsulationEnergyAbsorption) {
-//            List<EntityLiving> list = world.a(EntityLiving.class, AxisAlignedBB
-//                .a(energypath1.minX - 1, energypath1.minY - 1, energypath1.minZ - 1,
-//                    energypath1.maxX + 2, energypath1.maxY + 2, energypath1.maxZ + 2));
-//            for (EntityLiving entityLiving : list) {
-//              int k1 = 0;
-//
-//              for (IEnergyConductor iEnergyConductor : energypath1.conductors) {
-//                TileEntity tileentity = (TileEntity) iEnergyConductor;
-//                if (entityLiving.boundingBox.a(AxisAlignedBB
-//                    .a(tileentity.x - 1, tileentity.y - 1, tileentity.z - 1,
-//                        tileentity.x + 2, tileentity.y + 2, tileentity.z + 2))) {
-//                  int l1 = conducted - iEnergyConductor.getInsulationEnergyAbsorption();
-//                  if (l1 > k1) {
-//                    k1 = l1;
-//                  }
-//                  if (iEnergyConductor.getInsulationEnergyAbsorption() == energypath1.minInsulationEnergyAbsorption) {
-//                    break;
-//                  }
-//                }
-//              }
-//              if (entityLivingToShockEnergyMap.containsKey(entityLiving)) {
-//                entityLivingToShockEnergyMap.put(entityLiving, entityLivingToShockEnergyMap.get(entityLiving) + k1);
-//              }
-//              else {
-//                entityLivingToShockEnergyMap.put(entityLiving, k1);
-//              }
-//            }
-//            if (conducted >= energypath1.minInsulationBreakdownEnergy) {
-//              for (IEnergyConductor iEnergyConductor : energypath1.conductors) {
-//                if (conducted >= iEnergyConductor.getInsulationBreakdownEnergy()) {
-//                  iEnergyConductor.removeInsulation();
-//                  if (iEnergyConductor.getInsulationEnergyAbsorption() < energypath1.minInsulationEnergyAbsorption) {
-//                    energypath1.minInsulationEnergyAbsorption = iEnergyConductor.getInsulationEnergyAbsorption();
-//                  }
-//                }
-//              }
-//            }
-//          }
-        } while (conducted < energypath1.minConductorBreakdownEnergy);
-        for (IEnergyConductor iEnergyConductor : energypath1.conductors) {
-          if (conducted >= iEnergyConductor.getConductorBreakdownEnergy()) {
-            iEnergyConductor.removeConductor();
           }
         }
       }
     }
   }
   
-  public long getTotalEnergyConducted(TileEntity tileentity) {
-    long l = 0L;
-    if (tileentity instanceof IEnergyConductor || tileentity instanceof IEnergySink) {
-      List list = discover(tileentity, true, Integer.MAX_VALUE);
-      Iterator iterator1 = list.iterator();
-  
-      label56:
-      while (true) {
-        EnergyPath energypath1;
-        IEnergySource ienergysource;
-        do {
-          do {
-            if (!iterator1.hasNext()) {
-              break label56;
-            }
+  // Paths keep referring to broken chains, their sources are indexed by the chain's cable positions from now on
+  private void onChainBroken(EnergyNetGraph.Chain chain) {
+    for (IEnergySource iEnergySource : chain.sources) {
+      for (EnergyNetGraph.Node node : chain.nodes) {
+        indexEnergySource(node.position, iEnergySource);
+      }
+    }
+    chain.sources.clear();
+  }
   
-            energypath1 = (EnergyPath) iterator1.next();
-            ienergysource = (IEnergySource) energypath1.target;
-          } while (!energySourceToEnergyPathMap.containsKey(ienergysource));
-        } while ((double) ienergysource.getMaxEnergyOutput() <= energypath1.loss);
+  private void indexEnergySource(long position, IEnergySource iEnergySource) {
+    Set<IEnergySource> energySources = positionToEnergySourceMap.get(position);
+    if (energySources == null) {
+      energySources = new HashSet<>();
+      positionToEnergySourceMap.put(position, energySources);
+    }
+    energySources.add(iEnergySource);
+  }
   
-        Iterator iterator2 = ((List) energySourceToEnergyPathMap.get(ienergysource)).iterator();
+  private void unindexEnergySource(long position, IEnergySource iEnergySource) {
+    Set<IEnergySource> energySources = positionToEnergySourceMap.get(position);
+    if (energySources != null && energySources.remove(iEnergySource) && energySources.isEmpty()) {
+      positionToEnergySourceMap.remove(position);
+    }
+  }
   
-        while (true) {
-          EnergyPath energypath2;
-          do {
-            if (!iterator2.hasNext()) {
-              continue label56;
-            }
-      
-            energypath2 = (EnergyPath) iterator2.next();
-          } while ((!(tileentity instanceof IEnergySink) || energypath2.target != tileentity) &&
-              (!(tileentity instanceof IEnergyConductor) || !energypath2.conductors.contains(tileentity)));
+  public int emitEnergyFrom(IEnergySource ienergysource, int i) {
+    if (ienergysource == null || !ienergysource.isAddedToEnergyNet()) {
+      return i;
+    }
+    else if (mod_IC2.energyNetBatchedDistribution || mod_IC2.energyNetFlowSolver) {
+      return offerEnergy(ienergysource, i, i);
+    }
+    else {
+      EnergyNetGraph.Node node = graph.getNode((TileEntity) ienergysource);
+      if (node == null || !node.component.demandsEnergy()) { // No sink of the network takes energy right now
+        return i;
+      }
+      List<EnergyPath> energyPaths = getEnergyPaths(ienergysource);
+      return energyPaths == null ? i : distribute(node, energyPaths, i, null);
+    }
+  }
+  
+  // Emits up to packetCount packets of packetSize at once, demand and paths are only looked up once for all of them.
+  // Returns the energy that wasn't emitted.
+  public int emitEnergyFrom(IEnergySource ienergysource, int packetSize, int packetCount) {
+    int i = packetSize * packetCount;
+    if (ienergysource == null || !ienergysource.isAddedToEnergyNet() || packetCount <= 0) {
+      return i;
+    }
+    else if (mod_IC2.energyNetBatchedDistribution || mod_IC2.energyNetFlowSolver) {
+      return offerEnergy(ienergysource, packetSize, i);
+    }
+    else {
+      EnergyNetGraph.Node node = graph.getNode((TileEntity) ienergysource);
+      if (node == null || !node.component.demandsEnergy()) {
+        return i;
+      }
+      List<EnergyPath> energyPaths = getEnergyPaths(ienergysource);
+      return energyPaths == null ? i : distributePackets(node, energyPaths, packetSize, i, new HashMap<>());
+    }
+  }
+  
+  // Adds the energy to the combined output of the generator's aggregate, returns what the aggregate couldn't emit
+  // during the last tick
+  public int offerAggregatedEnergy(IEnergySource ienergysource, int i) {
+    EnergyNetGraph.Node node = graph.getNode((TileEntity) ienergysource);
+    if (node == null || !ienergysource.isAddedToEnergyNet() || node.unloaded) {
+      return i;
+    }
+    EnergyNetAggregate aggregate = energySourceToAggregateMap.get(ienergysource);
+    if (aggregate == null || aggregate.version != graph.getVersion()) {
+      aggregate = collectAggregate(node);
+    }
+    EnergyOffer energyOffer = energySourceToAggregateOfferMap.computeIfAbsent(ienergysource, EnergyOffer::new);
+    if (energyOffer.amount == 0 && i > 0) {
+      if (aggregate.energyOffers.isEmpty()) {
+        pendingAggregates.add(aggregate);
+      }
+      aggregate.energyOffers.add(energyOffer);
+    }
+    energyOffer.packetSize = Math.max(energyOffer.packetSize, i);
+    energyOffer.amount += i;
+    int refund = energyOffer.refund;
+    energyOffer.refund = 0;
+    return refund;
+  }
+  
+  // Flood fills over neighbours of the same class in the same network, members join on their next offer
+  private EnergyNetAggregate collectAggregate(EnergyNetGraph.Node leader) {
+    EnergyNetAggregate aggregate = new EnergyNetAggregate(leader, graph.getVersion());
+    ArrayDeque<EnergyNetGraph.Node> queue = new ArrayDeque<>();
+    queue.add(leader);
+    energySourceToAggregateMap.put((IEnergySource) leader.tileEntity, aggregate);
+    while (!queue.isEmpty()) {
+      EnergyNetGraph.Node node = queue.poll();
+      for (int j = 0; j < 6; j++) {
+        EnergyNetGraph.Node neighbour = graph.getNeighbour(node, j);
+        if (neighbour == null || neighbour.unloaded || neighbour.component != leader.component ||
+            neighbour.tileEntity.getClass() != leader.tileEntity.getClass() ||
+            energySourceToAggregateMap.get(neighbour.tileEntity) == aggregate) {
+          continue;
+        }
+        energySourceToAggregateMap.put((IEnergySource) neighbour.tileEntity, aggregate);
+        queue.add(neighbour);
+      }
+    }
+    return aggregate;
+  }
+  
+  // Emits the combined output of every aggregate once and hands what is left back to the members by their share
+  private void distributeAggregates() {
+    HashMap<IEnergySink, Boolean> sinkToDemandMap = new HashMap<>();
+    for (EnergyNetAggregate aggregate : pendingAggregates) {
+      int i = 0;
+      int packetSize = 0;
+      for (EnergyOffer energyOffer : aggregate.energyOffers) {
+        i += energyOffer.amount;
+        packetSize = Math.max(packetSize, energyOffer.packetSize);
+      }
+      int left = i;
+      EnergyNetGraph.Node leader = aggregate.leader;
+      if (graph.getNode(leader.tileEntity) == leader && leader.component.demandsEnergy()) {
+        List<EnergyPath> energyPaths = getEnergyPaths((IEnergySource) leader.tileEntity);
+        if (energyPaths != null) {
+          sinkToDemandMap.clear();
+          left = distributePackets(leader, energyPaths, EnergyNetAggregate.packetSize(energyPaths, packetSize), i,
+              sinkToDemandMap);
+        }
+      }
+      int refunded = 0;
+      for (int n = 0; n < aggregate.energyOffers.size(); n++) {
+        EnergyOffer energyOffer = aggregate.energyOffers.get(n);
+        int refund = n == aggregate.energyOffers.size() - 1 ? left - refunded :
+            (int) ((long) left * energyOffer.amount / i);
+        energyOffer.refund += refund;
+        refunded += refund;
+        energyOffer.amount = 0;
+        energyOffer.packetSize = 0;
+        refund(energyOffer);
+      }
+      aggregate.energyOffers.clear();
+    }
+    pendingAggregates.clear();
+  }
+  
+  // Posts the energy to the batch distributed at the end of the tick. Returns what was left over from the last batch,
+  // IEnergyRefundable sources get that credited directly instead.
+  private int offerEnergy(IEnergySource ienergysource, int packetSize, int i) {
+    EnergyOffer energyOffer = energySourceToEnergyOfferMap.computeIfAbsent(ienergysource, EnergyOffer::new);
+    energyOffer.packetSize = Math.max(energyOffer.packetSize, packetSize);
+    energyOffer.amount += i;
+    int refund = energyOffer.refund;
+    energyOffer.refund = 0;
+    return refund;
+  }
+  
+  // Runs one distribution pass per network over all energy offered during the tick
+  private void distributeOffers() {
+    LinkedHashMap<EnergyNetGraph.Component, List<EnergyOffer>> componentToEnergyOfferMap = new LinkedHashMap<>();
+    Iterator<EnergyOffer> energyOfferIterator = energySourceToEnergyOfferMap.values().iterator();
+    while (energyOfferIterator.hasNext()) {
+      EnergyOffer energyOffer = energyOfferIterator.next();
+      EnergyNetGraph.Node node = graph.getNode((TileEntity) energyOffer.source);
+      if (energyOffer.amount == 0) {
+        if (energyOffer.refund == 0) {
+          energyOfferIterator.remove();
+        }
+      }
+      else if (node == null || !node.component.demandsEnergy()) {
+        energyOffer.refund += energyOffer.amount;
+        energyOffer.amount = 0;
+      }
+      else {
+        energyOffer.node = node;
+        componentToEnergyOfferMap.computeIfAbsent(node.component, key -> new ArrayList<>()).add(energyOffer);
+      }
+    }
     
-          l += energypath2.totalEnergyConducted;
+    HashMap<IEnergySink, Boolean> sinkToDemandMap = new HashMap<>();
+    // Partitions plan with the flow solver's allocation, plain batched offers always go through distributePackets
+    if (mod_IC2.energyNetFlowSolver && mod_IC2.energyNetPartitionThreads > 0 && componentToEnergyOfferMap.size() > 1) {
+      distributePartitions(componentToEnergyOfferMap.values(), sinkToDemandMap);
+      componentToEnergyOfferMap.clear();
+    }
+    for (List<EnergyOffer> energyOffers : componentToEnergyOfferMap.values()) {
+      sinkToDemandMap.clear();
+      if (mod_IC2.energyNetFlowSolver) {
+        solve(energyOffers, sinkToDemandMap);
+        continue;
+      }
+      for (EnergyOffer energyOffer : energyOffers) {
+        List<EnergyPath> energyPaths = getEnergyPaths(energyOffer.source);
+        energyOffer.refund += energyPaths == null ? energyOffer.amount :
+            distributePackets(energyOffer.node, energyPaths, energyOffer.packetSize, energyOffer.amount, sinkToDemandMap);
+        energyOffer.amount = 0;
+        energyOffer.packetSize = 0;
+      }
+    }
+    for (EnergyOffer energyOffer : energySourceToEnergyOfferMap.values()) {
+      refund(energyOffer);
+    }
+  }
+  
+  // Credits what is left of the offer to its source if it takes refunds, otherwise it waits for the next offer
+  private static void refund(EnergyOffer energyOffer) {
+    if (energyOffer != null && energyOffer.source instanceof IEnergyRefundable) {
+      int i = energyOffer.amount + energyOffer.refund;
+      energyOffer.amount = 0;
+      energyOffer.refund = 0;
+      if (i > 0) {
+        ((IEnergyRefundable) energyOffer.source).refundEnergy(i);
+      }
+    }
+  }
+  
+  // Networks share no tiles, so their offers are planned in parallel. Only the share and packet arithmetic of plan()
+  // runs on the pool: path lookups, demand polls and rebalancing happen on the main thread before, every sink inject,
+  // demand update and breakdown on it afterwards.
+  private void distributePartitions(Collection<List<EnergyOffer>> componentEnergyOffers,
+                                    Map<IEnergySink, Boolean> sinkToDemandMap) {
+    List<EnergyNetPartition> partitions = new ArrayList<>(componentEnergyOffers.size());
+    for (List<EnergyOffer> energyOffers : componentEnergyOffers) {
+      EnergyNetPartition partition = new EnergyNetPartition(energyOffers);
+      for (EnergyOffer energyOffer : energyOffers) {
+        List<EnergyPath> energyPaths = getEnergyPaths(energyOffer.source);
+        partition.offerEnergyPaths.add(energyPaths);
+        if (energyPaths == null) {
+          continue;
+        }
+        boolean demanded = false;
+        for (EnergyPath energyPath : energyPaths) {
+          Boolean demand = partition.targetToDemandMap.get(energyPath.target);
+          if (demand == null) {
+            demand = demandsEnergy(energyPath, sinkToDemandMap);
+            partition.targetToDemandMap.put(energyPath.target, demand);
+          }
+          demanded |= demand;
+        }
+        if (!demanded) { // Like solve(), pruned tables may reach other sinks that still want energy
+          rebalanceEnergyPaths(energyOffer.source);
         }
       }
+      partitions.add(partition);
     }
     
-    EnergyPath energypath;
-    if (tileentity instanceof IEnergySource && energySourceToEnergyPathMap.containsKey(tileentity)) {
-      for (Iterator iterator = ((List) energySourceToEnergyPathMap.get(tileentity)).iterator(); iterator.hasNext();
-            l += energypath.totalEnergyConducted) {
-        energypath = (EnergyPath) iterator.next();
+    getPartitionPool().submit(() -> partitions.parallelStream().forEach(EnergyNetPartition::plan)).join();
+    
+    for (EnergyNetPartition partition : partitions) { // Sinks that filled up early skip their remaining packets
+      for (int n = 0; n < partition.size; n++) {
+        EnergyOffer energyOffer = partition.energyOffers.get(partition.offerIds[n]);
+        EnergyPath energyPath = partition.paths[n];
+        if (energyOffer.amount >= partition.packets[n] && demandsEnergy(energyPath, sinkToDemandMap)) {
+          energyOffer.amount -= transmit(energyOffer.node, energyPath, partition.packets[n], sinkToDemandMap);
+        }
+      }
+      for (EnergyOffer energyOffer : partition.energyOffers) {
+        energyOffer.refund += energyOffer.amount;
+        energyOffer.amount = 0;
+        energyOffer.packetSize = 0;
       }
     }
+  }
+  
+  private static ForkJoinPool getPartitionPool() {
+    if (partitionPool == null) {
+      partitionPool = new ForkJoinPool(mod_IC2.energyNetPartitionThreads);
+    }
+    return partitionPool;
+  }
   
-    return l;
+  // Sends i in packets of at most packetSize until the sinks stop taking energy, returns what is left over
+  private int distributePackets(EnergyNetGraph.Node node, List<EnergyPath> energyPaths, int packetSize, int i,
+                                Map<IEnergySink, Boolean> sinkToDemandMap) {
+    int remaining = i;
+    int refund = 0;
+    while (remaining > 0 && node.component.demandsEnergy()) {
+      int packet = Math.min(packetSize, remaining);
+      int returned = distribute(node, energyPaths, packet, sinkToDemandMap);
+      if (returned == packet) {
+        break;
+      }
+      remaining -= packet;
+      refund += returned;
+    }
+    return remaining + refund;
   }
   
-  private List<EnergyPath> discover(TileEntity tileEntity, boolean flag, int i) {
-    //newDiscover(tileEntity, flag, i); // Todo: Remove this
-    HashMap<TileEntity, EnergyBlockLink> tileEntityEnergyBlockLinkHashMap = new HashMap<>();
-    LinkedList<TileEntity> tileEntityLinkedList = new LinkedList<>();
-    tileEntityLinkedList.add(tileEntity);
+  // Matches all offers of a network against its demanding sinks at once. Each source splits its energy over the sinks it
+  // reaches, weighted by path loss and by how many sources compete for the same sink, and sends its share in packets no
+  // larger than it emitted itself. Runs in time linear in the paths plus packets of the network.
+  private void solve(List<EnergyOffer> energyOffers, Map<IEnergySink, Boolean> sinkToDemandMap) {
+    IdentityHashMap<IEnergySink, int[]> sinkToSupplierCountMap = new IdentityHashMap<>();
+    List<List<EnergyPath>> offerEnergyPaths = new ArrayList<>(energyOffers.size());
+    for (EnergyOffer energyOffer : energyOffers) {
+      List<EnergyPath> energyPaths = getEnergyPaths(energyOffer.source);
+      offerEnergyPaths.add(energyPaths);
+      if (energyPaths == null) {
+        continue;
+      }
+      for (EnergyPath energyPath : energyPaths) {
+        if (demandsEnergy(energyPath, sinkToDemandMap)) {
+          sinkToSupplierCountMap.computeIfAbsent((IEnergySink) energyPath.target, key -> new int[1])[0]++;
+        }
+      }
+    }
     
-    discover_1:
-    while (true) {
-      TileEntity tileEntity1;
-      do {
-        if (tileEntityLinkedList.isEmpty()) {
-          LinkedList<EnergyPath> energyPaths = new LinkedList<>();
-          Iterator<Entry<TileEntity, EnergyBlockLink>> tileEntityEnergyBlockLinkIterator =
-                tileEntityEnergyBlockLinkHashMap.entrySet().iterator();
-          
-          while (true) {
-            discover_2:
-            while (true) {
-              Entry<TileEntity, EnergyBlockLink> tileEntityEnergyBlockLinkEntry;
-              TileEntity energyPathTarget;
-              do {
-                if (!tileEntityEnergyBlockLinkIterator.hasNext()) {
-                  return energyPaths;
-                }
-                
-                tileEntityEnergyBlockLinkEntry = tileEntityEnergyBlockLinkIterator.next();
-                energyPathTarget = tileEntityEnergyBlockLinkEntry.getKey();
-              } while ((flag || !(energyPathTarget instanceof IEnergySink)) &&
-                    (!flag || !(energyPathTarget instanceof IEnergySource)));
-              
-              EnergyBlockLink energyBlockLink = tileEntityEnergyBlockLinkEntry.getValue();
-              EnergyPath energyPath = new EnergyPath();
-              energyPath.loss = Math.max(energyBlockLink.loss, 0.1D);
-              
-              energyPath.target = energyPathTarget;
-              energyPath.targetDirection = energyBlockLink.direction;
-              
-              if (!flag && tileEntity instanceof IEnergySource) {
-                while (true) {
-                  assert energyBlockLink != null;
-                  energyPathTarget = energyBlockLink.direction.applyToTileEntity(energyPathTarget);
-                  if (energyPathTarget == tileEntity) {
-                    break;
-                  }
-                  
-                  if (!(energyPathTarget instanceof IEnergyConductor)) {
-                    if (energyPathTarget != null) {
-                      System.out.println("EnergyNet: EnergyBlockLink corrupted (" + energyPath.target + " [" +
-                            energyPath.target.x + " " + energyPath.target.y + " " + energyPath.target.z + "] -> " +
-                            energyPathTarget + " [" + energyPathTarget.x + " " + energyPathTarget.y + " " +
-                            energyPathTarget.z + "] -> " + tileEntity + " [" + tileEntity.x + " " + tileEntity.y +
-                            " " + tileEntity.z + "])");
-                    }
-                    continue discover_2;
-                  }
-                  
-                  IEnergyConductor iEnergyConductor = (IEnergyConductor) energyPathTarget;
-                  
-                  energyPath.minX = Math.min(energyPath.minX, energyPathTarget.x);
-                  energyPath.minY = Math.min(energyPath.minY, energyPathTarget.y);
-                  energyPath.minZ = Math.min(energyPath.minZ, energyPathTarget.z);
-                  energyPath.maxX = Math.max(energyPath.maxX, energyPathTarget.x);
-                  energyPath.maxY = Math.max(energyPath.maxY, energyPathTarget.y);
-                  energyPath.maxZ = Math.max(energyPath.maxZ, energyPathTarget.z);
-                  
-                  energyPath.conductors.add(iEnergyConductor);
-                  
-                  energyPath.minInsulationEnergyAbsorption = Math.min(iEnergyConductor.getInsulationEnergyAbsorption(),
-                        energyPath.minInsulationEnergyAbsorption);
-                  energyPath.minInsulationBreakdownEnergy = Math.min(iEnergyConductor.getInsulationBreakdownEnergy(),
-                        energyPath.minInsulationBreakdownEnergy);
-                  energyPath.minConductorBreakdownEnergy = Math.min(iEnergyConductor.getConductorBreakdownEnergy(),
-                        energyPath.minConductorBreakdownEnergy);
-                  
-                  energyBlockLink = tileEntityEnergyBlockLinkHashMap.get(energyPathTarget);
-                  if (energyBlockLink == null) {
-                    Platform.displayError("An energy network pathfinding entry is corrupted.\nThis could happen " +
-                          "due to incorrect Minecraft behavior or a bug.\n\n(Technical information: energyBlockLink, " +
-                          "tile entities below)\nE: " + tileEntity + " (" + tileEntity.x + "," + tileEntity.y + "," +
-                          tileEntity.z + ")\n" + "C: " + energyPathTarget + " (" + energyPathTarget.x + "," +
-                          energyPathTarget.y + "," + energyPathTarget.z + ")\n" + "R: " + energyPath.target +
-                          " (" + energyPath.target.x + "," + energyPath.target.y + "," + energyPath.target.z + ")");
-                  }
-                }
-              }
-              
-              energyPaths.add(energyPath);
+    for (int pass = 0; pass < solverPasses; pass++) { // Later passes hand out what rounding and full sinks left over
+      for (int n = 0; n < energyOffers.size(); n++) {
+        EnergyOffer energyOffer = energyOffers.get(n);
+        List<EnergyPath> energyPaths = offerEnergyPaths.get(n);
+        if (energyPaths == null || energyOffer.amount == 0) {
+          continue;
+        }
+        long d = 0L;
+        for (EnergyPath energyPath : energyPaths) {
+          int[] supplierCount = sinkToSupplierCountMap.get(energyPath.target);
+          if (supplierCount != null && demandsEnergy(energyPath, sinkToDemandMap)) {
+            d += Math.max(energyPath.inverseLoss / supplierCount[0], 1L);
+          }
+        }
+        if (d == 0L) {
+          if (pass == 0) {
+            rebalanceEnergyPaths(energyOffer.source);
+          }
+          continue;
+        }
+        int i = energyOffer.amount;
+        for (EnergyPath energyPath : energyPaths) {
+          int[] supplierCount = sinkToSupplierCountMap.get(energyPath.target);
+          if (supplierCount == null || !demandsEnergy(energyPath, sinkToDemandMap)) {
+            continue;
+          }
+          int share = pass == solverPasses - 1 ? energyOffer.amount :
+              (int) (i * Math.max(energyPath.inverseLoss / supplierCount[0], 1L) / d);
+          int l = energyPath.lossFloor;
+          while (share > l && energyOffer.amount > l) {
+            int k = Math.min(Math.min(share, energyOffer.packetSize), energyOffer.amount);
+            if (k <= l) {
+              break;
+            }
+            int taken = transmit(energyOffer.node, energyPath, k, sinkToDemandMap);
+            energyOffer.amount -= taken;
+            share -= k;
+            if (taken < k || !demandsEnergy(energyPath, sinkToDemandMap)) { // Sink is full
+              break;
             }
           }
         }
-        
-        tileEntity1 = tileEntityLinkedList.remove();
-      } while (tileEntity1.l());
-      
-      double energyBlockLinkLoss = 0.0D;
-      if (tileEntity1 != tileEntity) {
-        energyBlockLinkLoss = tileEntityEnergyBlockLinkHashMap.get(tileEntity1).loss;
       }
-      
-      List<EnergyNet.EnergyTarget> energyTargetList = getValidReceivers(tileEntity1, flag);
-      Iterator<EnergyNet.EnergyTarget> energyTargetIterator = energyTargetList.iterator();
-      
-      while (true) {
-        EnergyTarget energyTarget;
-        double energyConductorConductionLoss;
-        do { // ... while tileEntityEnergyBlockLinkHashMap contains energyTarget.tileEntity AND
-          //            tileEntityEnergyBlockLinkHashMap.get(energyTarget.tileEntity).loss
-          //                <= energyBlockLinkLoss + energyConductorConductionLoss
-          
-          do { // ... while energyBlockLinkLoss + energyConductorConductionLoss >= 1
-            
-            do { // ... while energyTarget.tileEntity == tileEntity (from method args)
-              if (!energyTargetIterator.hasNext()) {
-                continue discover_1;
-              }
-              energyTarget = energyTargetIterator.next();
-            } while (energyTarget.tileEntity == tileEntity);
-            
-            energyConductorConductionLoss = 0.0D;
-            if (!(energyTarget.tileEntity instanceof IEnergyConductor)) {
-              break;
+    }
+    
+    for (EnergyOffer energyOffer : energyOffers) {
+      energyOffer.refund += energyOffer.amount;
+      energyOffer.amount = 0;
+      energyOffer.packetSize = 0;
+    }
+  }
+  
+  private List<EnergyPath> getEnergyPaths(IEnergySource ienergysource) {
+    if (suspendedSources.contains(ienergysource) || detachedSources.contains(ienergysource)) {
+      return null;
+    }
+    if (!energySourceToEnergyPathMap.containsKey(ienergysource) && pathCache != null) {
+      List<EnergyPath> energyPaths = pathCache.restore(ienergysource, graph);
+      if (energyPaths != null) {
+        putEnergyPaths(ienergysource, energyPaths);
+      }
+    }
+    if (!energySourceToEnergyPathMap.containsKey(ienergysource)) {
+      if (mod_IC2.energyNetAsyncDiscovery) { // Nothing to emit over until the first discovery finishes
+        if (!pendingDiscoveries.contains(ienergysource)) {
+          requestEnergyPaths(ienergysource);
+        }
+        return null;
+      }
+      putEnergyPaths(ienergysource, discover((TileEntity) ienergysource, false, ienergysource.getMaxEnergyOutput()),
+          discovery.boundaryReached());
+    }
+    if (mod_IC2.energyNetAsyncDiscovery && energySourceToEnergyPathMap.get(ienergysource).isEmpty()) {
+      return null; // Kept so the source is only discovered again once its network changes
+    }
+    List<EnergyPath> energyPaths = energySourceToEnergyPathMap.get(ienergysource);
+    if (energyPaths.isEmpty()) { // Remove empty entries
+      removeEnergyPaths(ienergysource);
+      return null;
+    }
+    return energyPaths;
+  }
+  
+  // Splits one packet over the demanding sinks, sinkToDemandMap caches demand polls during a batched pass
+  private int distribute(EnergyNetGraph.Node sourceNode, List<EnergyPath> energyPaths, int i,
+                         Map<IEnergySink, Boolean> sinkToDemandMap) {
+    int j = 0;
+    Vector<EnergyPath> vector = new Vector<>();
+    long d = 0L;
+    for (EnergyPath energypath : energyPaths) {
+      if (!EnergyNet.class.desiredAssertionStatus() && !(energypath.target instanceof IEnergySink)) {
+        throw new AssertionError();
+      }
+      if (demandsEnergy(energypath, sinkToDemandMap)) {
+        d += energypath.inverseLoss;
+        if (!vector.contains(energypath)) //Added to prevent duplicates.
+        {
+          vector.add(energypath);
+        }
+        if (vector.size() >= i) {
+          break;
+        }
+      }
+    }
+    if (vector.isEmpty()) { // Pruned tables may reach other sinks that still want energy
+      rebalanceEnergyPaths((IEnergySource) sourceNode.tileEntity);
+      return i;
+    }
+    for (EnergyPath energypath1 : vector) {
+      int k = (int) (i * energypath1.inverseLoss / d);
+      if (k > energypath1.lossFloor) {
+        j += transmit(sourceNode, energypath1, k, sinkToDemandMap);
+      }
+    }
+    return i - j;
+  }
+  
+  // Sends one packet of k EU along the path, returns the EU taken from the source
+  private int transmit(EnergyNetGraph.Node sourceNode, EnergyPath energypath1, int k,
+                       Map<IEnergySink, Boolean> sinkToDemandMap) {
+    IEnergySink ienergysink1 = (IEnergySink) energypath1.target;
+    int l = energypath1.lossFloor;
+    int i1 = ienergysink1.injectEnergy(energypath1.targetDirection, k - l);
+    if (energypath1.targetNode != null && energypath1.targetNode.notifiesDemand) {
+      graph.setDemanding(energypath1.targetNode, ienergysink1.demandsEnergy());
+    }
+    else if (sinkToDemandMap != null) { // Demand only changes for sinks that received energy
+      sinkToDemandMap.remove(ienergysink1);
+    }
+    int conducted = k - l - i1;
+    sourceNode.energyConducted += conducted;
+    if (energypath1.targetNode != null) {
+      energypath1.targetNode.energyConducted += conducted;
+    }
+    for (EnergyNetGraph.Node meter : energypath1.meters) {
+      meter.energyConducted += conducted;
+    }
+    if (conducted > energypath1.minInsulationEnergyAbsorption) { // Shocks are resolved once per tick, see heatConductors
+      if (energypath1.heatPackets++ == 0) {
+        hotPaths.add(energypath1);
+      }
+      energypath1.heatConducted += conducted;
+      if (conducted >= energypath1.minInsulationBreakdownEnergy) {
+        for (long position : energypath1.conductors) {
+          EnergyNetGraph.Node node = graph.getNode(position);
+          if (node != null && conducted >= node.insulationBreakdownEnergy) {
+            ((IEnergyConductor) node.tileEntity).removeInsulation();
+          }
+        }
+        for (EnergyNetGraph.Chain chain : energypath1.chains) {
+          for (EnergyNetGraph.Node node : chain.nodes) {
+            if (graph.getNode(node.position) == node && conducted >= node.insulationBreakdownEnergy) {
+              ((IEnergyConductor) node.tileEntity).removeInsulation();
             }
-            energyConductorConductionLoss = ((IEnergyConductor) energyTarget.tileEntity).getConductionLoss();
-            energyConductorConductionLoss = Math.max(energyConductorConductionLoss, 1.0E-4D);
-          } while (energyBlockLinkLoss + energyConductorConductionLoss >= i);
-          
-        } while (tileEntityEnergyBlockLinkHashMap.containsKey(energyTarget.tileEntity) &&
-              tileEntityEnergyBlockLinkHashMap.get(energyTarget.tileEntity).loss
-                    <= energyBlockLinkLoss + energyConductorConductionLoss);
-        
-        tileEntityEnergyBlockLinkHashMap.put(energyTarget.tileEntity,
-              new EnergyBlockLink(energyTarget.direction, energyBlockLinkLoss + energyConductorConductionLoss));
-        
-        if (energyTarget.tileEntity instanceof IEnergyConductor) {
-          tileEntityLinkedList.remove(energyTarget.tileEntity);
-          tileEntityLinkedList.add(energyTarget.tileEntity);
+          }
+        }
+      }
+    }
+    if (conducted >= energypath1.minConductorBreakdownEnergy) {
+      for (long position : energypath1.conductors) {
+        EnergyNetGraph.Node node = graph.getNode(position);
+        if (node != null && conducted >= ((IEnergyConductor) node.tileEntity).getConductorBreakdownEnergy()) {
+          ((IEnergyConductor) node.tileEntity).removeConductor();
+        }
+      }
+      for (EnergyNetGraph.Chain chain : energypath1.chains) { // Chains are only expanded when cables break down
+        for (EnergyNetGraph.Node node : chain.nodes) {
+          if (graph.getNode(node.position) == node && conducted >= node.conductorBreakdownEnergy) {
+            ((IEnergyConductor) node.tileEntity).removeConductor();
+          }
         }
       }
     }
+    return k - i1;
   }
   
-  private LinkedList<EnergyTarget> getValidReceivers(TileEntity tileentity, boolean flag) {
-    LinkedList<EnergyTarget> linkedlist = new LinkedList<>();
-    Direction[] adirection = Direction.values();
-    int i = adirection.length;
-    
-    for (int j = 0; j < i; ++j) {
-      Direction direction = adirection[j];
-      TileEntity tileentity1 = direction.applyToTileEntity(tileentity);
-      if (tileentity1 instanceof IEnergyTile && ((IEnergyTile) tileentity1).isAddedToEnergyNet()) {
-        Direction direction1 = direction.getInverse();
-        if ((!flag && tileentity instanceof IEnergyEmitter &&
-            ((IEnergyEmitter) tileentity).emitsEnergyTo(tileentity1, direction) ||
-            flag && tileentity instanceof IEnergyAcceptor &&
-                ((IEnergyAcceptor) tileentity).acceptsEnergyFrom(tileentity1, direction)) &&
-            (!flag && tileentity1 instanceof IEnergyAcceptor &&
-                ((IEnergyAcceptor) tileentity1).acceptsEnergyFrom(tileentity, direction1) ||
-                flag && tileentity1 instanceof IEnergyEmitter &&
-                    ((IEnergyEmitter) tileentity1).emitsEnergyTo(tileentity, direction1))) {
-          linkedlist.add(new EnergyTarget(tileentity1, direction1));
+  // Hands the conductors of hot paths to the shock index, each with what it conducted beyond its insulation
+  private void heatConductors() {
+    for (EnergyPath energyPath : hotPaths) {
+      for (long position : energyPath.conductors) {
+        heatConductor(graph.getNode(position), energyPath);
+      }
+      for (EnergyNetGraph.Chain chain : energyPath.chains) {
+        for (EnergyNetGraph.Node node : chain.nodes) {
+          if (graph.getNode(node.position) == node) {
+            heatConductor(node, energyPath);
+          }
+        }
+      }
+      energyPath.heatConducted = 0;
+      energyPath.heatPackets = 0;
+    }
+    hotPaths.clear();
+  }
+  
+  private void heatConductor(EnergyNetGraph.Node node, EnergyPath energyPath) {
+    if (node == null) {
+      return;
+    }
+    long energy = energyPath.heatConducted - (long) energyPath.heatPackets * node.insulationEnergyAbsorption;
+    if (energy > 0L) {
+      shockIndex.heat(node.position, (int) energy);
+    }
+  }
+  
+  private static boolean demandsEnergy(EnergyPath energyPath, Map<IEnergySink, Boolean> sinkToDemandMap) {
+    if (energyPath.targetNode != null && energyPath.targetNode.notifiesDemand) {
+      return energyPath.targetNode.demanding;
+    }
+    IEnergySink iEnergySink = (IEnergySink) energyPath.target;
+    if (sinkToDemandMap == null) {
+      return iEnergySink.demandsEnergy();
+    }
+    return sinkToDemandMap.computeIfAbsent(iEnergySink, IEnergySink::demandsEnergy);
+  }
+  
+  // Counters are kept on the graph nodes, conductors only count once they have been metered for the first time
+  public long getTotalEnergyConducted(TileEntity tileentity) {
+    EnergyNetGraph.Node node = graph.getNode(tileentity);
+    if (node == null) {
+      return 0L;
+    }
+    if (node.conductor && !node.metered) {
+      meter(node);
+    }
+    return node.energyConducted;
+  }
+  
+  private void meter(EnergyNetGraph.Node node) {
+    graph.setMetered(node); // Metered cables are kept out of chains so paths can count them individually
+    Set<IEnergySource> energySources = positionToEnergySourceMap.get(node.position);
+    if (energySources == null) {
+      return;
+    }
+    for (IEnergySource iEnergySource : energySources) {
+      for (EnergyPath energyPath : energySourceToEnergyPathMap.getOrDefault(iEnergySource,
+          Collections.emptyList())) {
+        if (energyPath.passesThrough(node.position)) {
+          energyPath.addMeter(node);
         }
       }
     }
+  }
+  
+  private List<EnergyPath> discover(TileEntity tileEntity, boolean flag, int i) {
+    return discovery.discover(graph.getNode(tileEntity), flag, i, graph);
+  }
+  
+  static class EnergyOffer {
+    IEnergySource source;
+    EnergyNetGraph.Node node = null;
+    int packetSize = 0;
+    int amount = 0;
+    int refund = 0;
     
-    return linkedlist;
+    EnergyOffer(IEnergySource source) {
+      this.source = source;
+    }
   }
   
-  static class EnergyBlockLink {
-    Direction direction;
-    double loss;
+  static class DiscoveryResult {
+    final IEnergySource source;
+    final List<EnergyPath> energyPaths;
+    final boolean boundaryReached;
     
-    EnergyBlockLink(Direction direction1, double d) {
-      direction = direction1;
-      loss = d;
+    DiscoveryResult(IEnergySource source, List<EnergyPath> energyPaths, boolean boundaryReached) {
+      this.source = source;
+      this.energyPaths = energyPaths;
+      this.boundaryReached = boundaryReached;
     }
   }
   
   static class EnergyPath {
+    static final long[] noConductors = new long[0];
+    static final EnergyNetGraph.Node[] noMeters = new EnergyNetGraph.Node[0];
+    static final EnergyNetGraph.Chain[] noChains = new EnergyNetGraph.Chain[0];
+    static final double inverseLossScale = 1 << 20;
     TileEntity target = null;
+    EnergyNetGraph.Node targetNode = null; // Live graph node of the target, resolved when the path gets cached
     Direction targetDirection;
-    Set<IEnergyConductor> conductors = new HashSet<>();
+    long[] conductors = noConductors; // Packed positions of conductors outside chains, from the target to the source
+    EnergyNetGraph.Chain[] chains = noChains;
     int minX = Integer.MAX_VALUE;
     int minY = Integer.MAX_VALUE;
     int minZ = Integer.MAX_VALUE;
@@ -457,10 +1232,39 @@ public final class EnergyNet {
     int maxY = Integer.MIN_VALUE;
     int maxZ = Integer.MIN_VALUE;
     double loss = 0.0D;
+    int lossFloor = 0; // Whole EU lost by every packet
+    long inverseLoss = 0L; // 1/loss in fixed point, shares only depend on the ratio between paths
     int minInsulationEnergyAbsorption = Integer.MAX_VALUE;
     int minInsulationBreakdownEnergy = Integer.MAX_VALUE;
     int minConductorBreakdownEnergy = Integer.MAX_VALUE;
-    long totalEnergyConducted = 0L;
+    EnergyNetGraph.Node[] meters = noMeters; // Metered conductors along the path
+    int heatConducted = 0; // Energy and packets above minInsulationEnergyAbsorption during the current tick
+    int heatPackets = 0;
+    
+    void setLoss(double loss) {
+      this.loss = loss;
+      this.lossFloor = (int) Math.floor(loss);
+      this.inverseLoss = Math.round(inverseLossScale / loss);
+    }
+    
+    void addMeter(EnergyNetGraph.Node node) {
+      meters = Arrays.copyOf(meters, meters.length + 1);
+      meters[meters.length - 1] = node;
+    }
+    
+    boolean passesThrough(long position) {
+      for (long conductor : conductors) {
+        if (conductor == position) {
+          return true;
+        }
+      }
+      for (EnergyNetGraph.Chain chain : chains) {
+        if (chain.contains(position)) {
+          return true;
+        }
+      }
+      return false;
+    }
     
     @Override
     public boolean equals(Object o) {
@@ -476,14 +1280,4 @@ public final class EnergyNet {
           && ep.minZ == minZ && ep.maxX == maxX && ep.maxY == maxY && ep.maxZ == maxZ;
     }
   }
-  
-  static class EnergyTarget {
-    TileEntity tileEntity;
-    Direction direction;
-    
-    EnergyTarget(TileEntity tileentity, Direction direction1) {
-      tileEntity = tileentity;
-      direction = direction1;
-    }
-  }
 }
@@ -0,0 +1,247 @@
+package ic2.common;
+
+import ic2.api.IEnergySink;
+import ic2.api.IEnergySource;
+import ic2.platform.Platform;
+import net.minecraft.server.TileEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Reusable loss-weighted path search, visit state is kept in primitive arrays so a discovery only allocates its result.
+// Only reads cached node data, so it also runs on worker threads against graph snapshots. With a graph given, chains of
+// plain cables are crossed as a single edge.
+final class EnergyNetDiscovery {
+  private final EnergyNetLossHeap lossHeap = new EnergyNetLossHeap();
+  private long[] visitedKeys = new long[128];
+  private int[] visitedIds = new int[128];
+  private int visitedCount = 0;
+  private EnergyNetGraph.Node[] visitedNodes = new EnergyNetGraph.Node[64];
+  private double[] visitedLosses = new double[64];
+  private byte[] visitedDirections = new byte[64]; // Direction back towards the start, -1 for the start itself
+  private EnergyNetGraph.Chain[] visitedChains = new EnergyNetGraph.Chain[64]; // Chain crossed to reach the node
+  private long[] conductorBuffer = new long[64];
+  private EnergyNetGraph.Chain[] chainBuffer = new EnergyNetGraph.Chain[16];
+  private boolean boundaryReached = false;
+
+  EnergyNetDiscovery() {
+    Arrays.fill(visitedKeys, EnergyNetPositionMap.emptyKey);
+  }
+
+  // Dijkstra search from start, flag selects searching for sources (true) or sinks (false)
+  List<EnergyNet.EnergyPath> discover(EnergyNetGraph.Node start, boolean flag, int i, EnergyNetGraph graph) {
+    List<EnergyNet.EnergyPath> energyPaths = new ArrayList<>();
+    if (start == null) {
+      return energyPaths;
+    }
+    clear();
+    boundaryReached = false;
+    visit(start, (byte) -1, null, 0.0D);
+    lossHeap.offer(start.position, 0.0D);
+
+    while (!lossHeap.isEmpty()) {
+      double energyBlockLinkLoss = lossHeap.peekLoss();
+      EnergyNetGraph.Node node = visitedNodes[idOf(lossHeap.poll())];
+      if (node.tileEntity.l()) {
+        continue;
+      }
+
+      for (int j = 0; j < 6; j++) {
+        EnergyNetGraph.Node target = node.links[j];
+        if (target == null || (flag ? !node.acceptsFrom(j) : !node.emitsTo(j))) {
+          continue;
+        }
+        double loss = energyBlockLinkLoss;
+        byte direction = (byte) (j ^ 1); // Inverse direction, see Direction.getInverse
+        EnergyNetGraph.Chain chain = graph == null ? null : graph.chainOf(target);
+        if (chain != null) { // Skip over the whole chain, it conducts both ways
+          loss += chain.loss;
+          if (loss >= i) {
+            continue;
+          }
+          if (chain.isBlocked()) {
+            boundaryReached = true;
+            continue;
+          }
+          direction = (byte) chain.exitDirection(node, j);
+          target = chain.exit(node, j);
+        }
+        if (target == start) {
+          continue;
+        }
+        if (target.unloaded) { // Unloaded chunks end the network until they are back
+          boundaryReached = true;
+          continue;
+        }
+        loss += target.conductionLoss;
+        if (target.conductor && loss >= i) {
+          continue;
+        }
+        int id = idOf(target.position);
+        if (id >= 0 && visitedLosses[id] <= loss) {
+          continue;
+        }
+        if (id >= 0) {
+          visitedLosses[id] = loss;
+          visitedDirections[id] = direction;
+          visitedChains[id] = chain;
+        }
+        else {
+          visit(target, direction, chain, loss);
+        }
+        if (target.conductor) { // Only conductors pass energy on
+          lossHeap.offer(target.position, loss);
+        }
+      }
+    }
+
+    boolean collectConductors = !flag && start.tileEntity instanceof IEnergySource;
+    discover_2:
+    for (int id = 1; id < visitedCount; id++) {
+      EnergyNetGraph.Node target = visitedNodes[id];
+      TileEntity energyPathTarget = target.tileEntity;
+      if (flag ? !(energyPathTarget instanceof IEnergySource) : !(energyPathTarget instanceof IEnergySink)) {
+        continue;
+      }
+
+      EnergyNet.EnergyPath energyPath = new EnergyNet.EnergyPath();
+      energyPath.setLoss(Math.max(visitedLosses[id], 0.1D));
+      energyPath.target = energyPathTarget;
+      energyPath.targetDirection = EnergyNetGraph.directions[visitedDirections[id]];
+
+      if (collectConductors) {
+        int conductorCount = 0;
+        int chainCount = 0;
+        EnergyNetGraph.Node node = target;
+        int nodeId = id;
+        while (true) {
+          EnergyNetGraph.Chain chain = visitedChains[nodeId];
+          if (chain != null) {
+            node = chain.exit(node, visitedDirections[nodeId]);
+            if (chainCount == chainBuffer.length) {
+              chainBuffer = Arrays.copyOf(chainBuffer, chainCount * 2);
+            }
+            chainBuffer[chainCount++] = chain;
+            energyPath.minX = Math.min(energyPath.minX, chain.minX);
+            energyPath.minY = Math.min(energyPath.minY, chain.minY);
+            energyPath.minZ = Math.min(energyPath.minZ, chain.minZ);
+            energyPath.maxX = Math.max(energyPath.maxX, chain.maxX);
+            energyPath.maxY = Math.max(energyPath.maxY, chain.maxY);
+            energyPath.maxZ = Math.max(energyPath.maxZ, chain.maxZ);
+            energyPath.minInsulationEnergyAbsorption = Math.min(chain.minInsulationEnergyAbsorption,
+                energyPath.minInsulationEnergyAbsorption);
+            energyPath.minInsulationBreakdownEnergy = Math.min(chain.minInsulationBreakdownEnergy,
+                energyPath.minInsulationBreakdownEnergy);
+            energyPath.minConductorBreakdownEnergy = Math.min(chain.minConductorBreakdownEnergy,
+                energyPath.minConductorBreakdownEnergy);
+          }
+          else {
+            node = node.links[visitedDirections[nodeId]];
+          }
+          if (node == start) {
+            break;
+          }
+          nodeId = node == null ? -1 : idOf(node.position);
+          if (nodeId < 0 || !node.conductor) {
+            Platform.displayError("An energy network pathfinding entry is corrupted.\nThis could happen " +
+                "due to incorrect Minecraft behavior or a bug.\n\n(Technical information: energyBlockLink, " +
+                "tile entities below)\nE: " + start.tileEntity + " (" + start.tileEntity.x + "," +
+                start.tileEntity.y + "," + start.tileEntity.z + ")\n" + "R: " + energyPathTarget + " (" +
+                energyPathTarget.x + "," + energyPathTarget.y + "," + energyPathTarget.z + ")");
+            continue discover_2;
+          }
+
+          TileEntity energyPathConductor = node.tileEntity;
+
+          energyPath.minX = Math.min(energyPath.minX, energyPathConductor.x);
+          energyPath.minY = Math.min(energyPath.minY, energyPathConductor.y);
+          energyPath.minZ = Math.min(energyPath.minZ, energyPathConductor.z);
+          energyPath.maxX = Math.max(energyPath.maxX, energyPathConductor.x);
+          energyPath.maxY = Math.max(energyPath.maxY, energyPathConductor.y);
+          energyPath.maxZ = Math.max(energyPath.maxZ, energyPathConductor.z);
+
+          if (conductorCount == conductorBuffer.length) {
+            conductorBuffer = Arrays.copyOf(conductorBuffer, conductorCount * 2);
+          }
+          conductorBuffer[conductorCount++] = node.position;
+
+          energyPath.minInsulationEnergyAbsorption = Math.min(node.insulationEnergyAbsorption,
+              energyPath.minInsulationEnergyAbsorption);
+          energyPath.minInsulationBreakdownEnergy = Math.min(node.insulationBreakdownEnergy,
+              energyPath.minInsulationBreakdownEnergy);
+          energyPath.minConductorBreakdownEnergy = Math.min(node.conductorBreakdownEnergy,
+              energyPath.minConductorBreakdownEnergy);
+        }
+        energyPath.conductors = Arrays.copyOf(conductorBuffer, conductorCount);
+        if (chainCount > 0) {
+          energyPath.chains = Arrays.copyOf(chainBuffer, chainCount);
+        }
+      }
+
+      energyPaths.add(energyPath);
+    }
+    return energyPaths;
+  }
+
+  // Whether the last discovery stopped at an unloaded chunk and may find more once it loads
+  boolean boundaryReached() {
+    return boundaryReached;
+  }
+
+  private void clear() {
+    lossHeap.clear();
+    if (visitedCount > 0) {
+      Arrays.fill(visitedKeys, EnergyNetPositionMap.emptyKey);
+      Arrays.fill(visitedNodes, 0, visitedCount, null);
+      Arrays.fill(visitedChains, 0, visitedCount, null);
+      visitedCount = 0;
+    }
+  }
+
+  private void visit(EnergyNetGraph.Node node, byte direction, EnergyNetGraph.Chain chain, double loss) {
+    if (visitedCount == visitedNodes.length) {
+      visitedChains = Arrays.copyOf(visitedChains, visitedCount * 2);
+      visitedNodes = Arrays.copyOf(visitedNodes, visitedCount * 2);
+      visitedLosses = Arrays.copyOf(visitedLosses, visitedCount * 2);
+      visitedDirections = Arrays.copyOf(visitedDirections, visitedCount * 2);
+    }
+    int id = visitedCount++;
+    visitedNodes[id] = node;
+    visitedLosses[id] = loss;
+    visitedDirections[id] = direction;
+    visitedChains[id] = chain;
+
+    if (visitedCount * 2 > visitedKeys.length) {
+      long[] oldKeys = visitedKeys;
+      int[] oldIds = visitedIds;
+      visitedKeys = new long[oldKeys.length * 2];
+      visitedIds = new int[oldKeys.length * 2];
+      Arrays.fill(visitedKeys, EnergyNetPositionMap.emptyKey);
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != EnergyNetPositionMap.emptyKey) {
+          int index = find(oldKeys[i]);
+          visitedKeys[index] = oldKeys[i];
+          visitedIds[index] = oldIds[i];
+        }
+      }
+    }
+    int index = find(node.position);
+    visitedKeys[index] = node.position;
+    visitedIds[index] = id;
+  }
+
+  private int idOf(long position) {
+    int index = find(position);
+    return visitedKeys[index] == position ? visitedIds[index] : -1;
+  }
+
+  private int find(long position) {
+    int mask = visitedKeys.length - 1;
+    int index = EnergyNetPositionMap.hash(position) & mask;
+    while (visitedKeys[index] != EnergyNetPositionMap.emptyKey && visitedKeys[index] != position) {
+      index = index + 1 & mask;
+    }
+    return index;
+  }
+}
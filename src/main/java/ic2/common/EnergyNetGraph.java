@@ -0,0 +1,597 @@
+package ic2.common;
+
+import ic2.api.*;
+import net.minecraft.server.TileEntity;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+final class EnergyNetGraph {
+  static final Direction[] directions = Direction.values();
+  private static final int[] offsetX = {-1, 1, 0, 0, 0, 0};
+  private static final int[] offsetY = {0, 0, -1, 1, 0, 0};
+  private static final int[] offsetZ = {0, 0, 0, 0, -1, 1};
+  private final EnergyNetPositionMap<Node> positionToNodeMap = new EnergyNetPositionMap<>(1024);
+  private final EnergyNetPositionMap<long[]> chunkToHashMap = new EnergyNetPositionMap<>(); // XOR of the node hashes
+  private int version = 0; // Incremented on every topology change
+  private final Consumer<Chain> chainBreakListener;
+
+  EnergyNetGraph(Consumer<Chain> chainBreakListener) {
+    this.chainBreakListener = chainBreakListener;
+  }
+
+  // Packs block coordinates into a single key, 26 bits for x and z and 12 bits for y
+  static long pack(int x, int y, int z) {
+    return ((long) x & 0x3FFFFFFL) << 38 | ((long) z & 0x3FFFFFFL) << 12 | (long) y & 0xFFFL;
+  }
+
+  static long pack(TileEntity tileEntity) {
+    return pack(tileEntity.x, tileEntity.y, tileEntity.z);
+  }
+
+  static int unpackX(long position) {
+    return (int) (position >> 38);
+  }
+
+  static int unpackY(long position) {
+    return (int) (position & 0xFFFL);
+  }
+
+  static int unpackZ(long position) {
+    return (int) (position << 26 >> 38);
+  }
+
+  // Key of the chunk containing the position, packed like a position with chunk coordinates
+  static long chunkOf(long position) {
+    return pack(unpackX(position) >> 4, 0, unpackZ(position) >> 4);
+  }
+
+  // Changes whenever an energy tile in the chunk is added, removed or replaced
+  long getChunkHash(long chunk) {
+    long[] hash = chunkToHashMap.get(chunk);
+    return hash == null ? 0L : hash[0];
+  }
+
+  Node getNode(long position) {
+    return positionToNodeMap.get(position);
+  }
+
+  Node getNeighbour(Node node, int direction) {
+    TileEntity tileEntity = node.tileEntity;
+    return positionToNodeMap.get(
+        pack(tileEntity.x + offsetX[direction], tileEntity.y + offsetY[direction], tileEntity.z + offsetZ[direction]));
+  }
+
+  int getVersion() {
+    return version;
+  }
+
+  Node getNode(TileEntity tileEntity) {
+    Node node = positionToNodeMap.get(pack(tileEntity));
+    return node != null && node.tileEntity == tileEntity ? node : null;
+  }
+
+  boolean contains(TileEntity tileEntity) {
+    return getNode(tileEntity) != null;
+  }
+
+  // Links the tile entity to its registered neighbours and merges their components, returns the resulting component
+  Component add(TileEntity tileEntity) {
+    version++;
+    Node node = new Node(tileEntity);
+    Node stale = positionToNodeMap.get(node.position);
+    if (stale != null) { // Also drops entries of replaced tile entities that were never removed
+      remove(stale.tileEntity);
+    }
+    positionToNodeMap.put(node.position, node);
+    updateChunkHash(node);
+
+    // Neighbours are looked up by position only, so adding never touches the world or loads chunks
+    for (int i = 0; i < directions.length; i++) {
+      Direction direction = directions[i];
+      Node neighbour = positionToNodeMap.get(
+          pack(tileEntity.x + offsetX[i], tileEntity.y + offsetY[i], tileEntity.z + offsetZ[i]));
+      if (neighbour == null) {
+        continue;
+      }
+      TileEntity neighbourTileEntity = neighbour.tileEntity;
+      Direction inverse = direction.getInverse();
+      boolean emits = canConduct(tileEntity, neighbourTileEntity, direction);
+      boolean accepts = canConduct(neighbourTileEntity, tileEntity, inverse);
+      if (emits || accepts) {
+        node.link(direction, neighbour, emits, accepts);
+        neighbour.link(inverse, node, accepts, emits);
+      }
+    }
+    breakChains(node, 2); // Chains ending next to the new node may have changed their shape
+
+    Component component = null;
+    for (Node neighbour : node.links) {
+      if (neighbour == null || neighbour.component == component) {
+        continue;
+      }
+      if (component == null) {
+        component = neighbour.component;
+      }
+      else {
+        component = merge(component, neighbour.component);
+      }
+    }
+    if (component == null) {
+      component = new Component();
+    }
+    component.addNode(node);
+    return component;
+  }
+
+  // Unlinks the tile entity and splits its component if needed, returns the components that contained its neighbours
+  List<Component> remove(TileEntity tileEntity) {
+    Node node = getNode(tileEntity);
+    if (node == null) {
+      return Collections.emptyList();
+    }
+    positionToNodeMap.remove(node.position);
+    updateChunkHash(node);
+    version++;
+    breakChains(node, 2);
+    Component component = node.component;
+    component.removeNode(node);
+
+    List<Node> neighbours = new ArrayList<>(6);
+    for (int i = 0; i < directions.length; i++) {
+      Node neighbour = node.links[i];
+      if (neighbour != null) {
+        neighbour.unlink(directions[i].getInverse());
+        if (!neighbours.contains(neighbour)) {
+          neighbours.add(neighbour);
+        }
+      }
+    }
+
+    List<Component> components = new ArrayList<>(neighbours.size());
+    if (neighbours.isEmpty()) {
+      return components;
+    }
+    components.add(component);
+    if (neighbours.size() == 1) {
+      return components;
+    }
+
+    // Flood the old component from the first neighbour, every neighbour left unreached starts a new component
+    Set<Node> reached = collect(neighbours.get(0));
+    for (int i = 1; i < neighbours.size(); i++) {
+      Node neighbour = neighbours.get(i);
+      if (reached.contains(neighbour) || neighbour.component != component) {
+        continue;
+      }
+      Component split = new Component();
+      for (Node splitNode : collect(neighbour)) {
+        component.removeNode(splitNode);
+        split.addNode(splitNode);
+      }
+      components.add(split);
+    }
+    return components;
+  }
+
+  // Nodes of unloaded chunks stay in the graph as boundaries until their tile entities come back
+  void setUnloaded(Node node, boolean unloaded) {
+    boolean blocked = node.isBlocked();
+    node.unloaded = unloaded;
+    updateBlocked(node, blocked);
+    node.component.changed();
+    version++;
+  }
+
+  // Nodes queued for removal stay in the graph until the removal is applied, discovery stops at them like at unloaded ones
+  void setRemoving(Node node) {
+    boolean blocked = node.isBlocked();
+    node.removing = true;
+    updateBlocked(node, blocked);
+  }
+
+  private static void updateBlocked(Node node, boolean blocked) {
+    if (node.chain != null && node.isBlocked() != blocked) {
+      node.chain.blockedNodes += blocked ? -1 : 1;
+    }
+  }
+
+  // Whether the reloaded tile entity can take over the node of its unloaded predecessor
+  static boolean canRebind(Node node, TileEntity tileEntity) {
+    if (!node.unloaded || node.tileEntity.getClass() != tileEntity.getClass()) {
+      return false;
+    }
+    Node replacement = new Node(tileEntity);
+    return replacement.conductionLoss == node.conductionLoss &&
+        replacement.insulationEnergyAbsorption == node.insulationEnergyAbsorption &&
+        replacement.insulationBreakdownEnergy == node.insulationBreakdownEnergy &&
+        replacement.conductorBreakdownEnergy == node.conductorBreakdownEnergy;
+  }
+
+  // Swaps the tile entity of an unloaded node, links, chains and paths along it stay valid
+  void rebind(Node node, TileEntity tileEntity) {
+    if (node.tileEntity instanceof IEnergySource) {
+      node.component.sources.remove(node.tileEntity);
+      node.component.sources.add((IEnergySource) tileEntity);
+    }
+    node.tileEntity = tileEntity;
+    setUnloaded(node, false);
+    setDemanding(node, node.notifiesDemand && ((IEnergySink) tileEntity).demandsEnergy());
+  }
+
+  void setMetered(Node node) {
+    breakChains(node, 0);
+    node.metered = true;
+  }
+
+  // Returns the chain of consecutive plain cables the node belongs to, built on first use, null if it is not part of one
+  Chain chainOf(Node node) {
+    if (node.chain != null) {
+      return node.chain;
+    }
+    if (!isChainable(node)) {
+      return null;
+    }
+    ArrayDeque<Node> nodes = new ArrayDeque<>();
+    nodes.add(node);
+    Node[] junctions = new Node[2];
+    int[] ends = new int[2]; // Direction from the outermost chain node to the junction, per walk
+    int walk = 0;
+    for (int i = 0; i < 6 && walk < 2; i++) {
+      if (node.links[i] == null) {
+        continue;
+      }
+      int direction = i;
+      Node current = node.links[i];
+      while (current != node && isChainable(current)) {
+        if (walk == 0) {
+          nodes.addLast(current);
+        }
+        else {
+          nodes.addFirst(current);
+        }
+        direction = otherLink(current, direction ^ 1);
+        current = current.links[direction];
+      }
+      if (current == node) { // Closed loop of cables without any junction
+        return null;
+      }
+      junctions[walk] = current;
+      ends[walk++] = direction;
+    }
+    // The second walk was prepended, so it ends at a and the first walk ends at b
+    Chain chain = new Chain(nodes.toArray(new Node[0]), junctions[1], ends[1] ^ 1, junctions[0], ends[0] ^ 1);
+    for (Node chainNode : chain.nodes) {
+      chainNode.chain = chain;
+    }
+    return chain;
+  }
+
+  private void updateChunkHash(Node node) {
+    long chunk = chunkOf(node.position);
+    long[] hash = chunkToHashMap.get(chunk);
+    if (hash == null) {
+      hash = new long[1];
+      chunkToHashMap.put(chunk, hash);
+    }
+    hash[0] ^= node.hash();
+  }
+
+  private void breakChains(Node node, int depth) {
+    if (node.chain != null) {
+      Chain chain = node.chain;
+      chain.valid = false;
+      for (Node chainNode : chain.nodes) {
+        chainNode.chain = null;
+      }
+      chainBreakListener.accept(chain);
+    }
+    if (depth > 0) {
+      for (Node neighbour : node.links) {
+        if (neighbour != null) {
+          breakChains(neighbour, depth - 1);
+        }
+      }
+    }
+  }
+
+  // Unmetered conductors with exactly two links that conduct both ways
+  private static boolean isChainable(Node node) {
+    if (!node.conductor || node.metered) {
+      return false;
+    }
+    int linkMask = 0;
+    for (int i = 0; i < 6; i++) {
+      if (node.links[i] != null) {
+        linkMask |= 1 << i;
+      }
+    }
+    return Integer.bitCount(linkMask) == 2 && node.emitMask == linkMask && node.acceptMask == linkMask;
+  }
+
+  private static int otherLink(Node node, int direction) {
+    for (int i = 0; i < 6; i++) {
+      if (i != direction && node.links[i] != null) {
+        return i;
+      }
+    }
+    return direction;
+  }
+
+  // Updates the cached demand of a sink that notifies its demand changes
+  void setDemanding(Node node, boolean demanding) {
+    if (node.notifiesDemand && node.demanding != demanding) {
+      node.demanding = demanding;
+      node.component.demandingSinks += demanding ? 1 : -1;
+      node.component.changed();
+    }
+  }
+  
+  // Detached copy of a component that worker threads can search while the live graph keeps changing. Copying is linear
+  // in the component and happens on the calling thread, once per topology version: requests between two changes share
+  // the copy, but every change makes the next request pay for the whole component again.
+  EnergyNetPositionMap<Node> snapshot(Component component) {
+    if (component.snapshot != null && component.snapshotVersion == version) {
+      return component.snapshot;
+    }
+    EnergyNetPositionMap<Node> snapshot = new EnergyNetPositionMap<>(component.nodes.size());
+    for (Node node : component.nodes) {
+      snapshot.put(node.position, new Node(node));
+    }
+    snapshot.forEachValue(copy -> {
+      Node node = positionToNodeMap.get(copy.position);
+      for (int i = 0; i < 6; i++) {
+        if (node.links[i] != null) {
+          copy.links[i] = snapshot.get(node.links[i].position);
+        }
+      }
+    });
+    component.snapshot = snapshot;
+    component.snapshotVersion = version;
+    return snapshot;
+  }
+
+  private static boolean canConduct(TileEntity from, TileEntity to, Direction direction) {
+    return from instanceof IEnergyEmitter && ((IEnergyEmitter) from).emitsEnergyTo(to, direction) &&
+        to instanceof IEnergyAcceptor && ((IEnergyAcceptor) to).acceptsEnergyFrom(from, direction.getInverse());
+  }
+
+  private static Component merge(Component a, Component b) {
+    Component larger = a.nodes.size() >= b.nodes.size() ? a : b;
+    Component smaller = larger == a ? b : a;
+    for (Node node : smaller.nodes) {
+      larger.addNode(node);
+    }
+    smaller.nodes.clear();
+    smaller.sources.clear();
+    smaller.demandingSinks = 0;
+    smaller.pollingSinks = 0;
+    return larger;
+  }
+
+  private static Set<Node> collect(Node start) {
+    Set<Node> reached = new HashSet<>();
+    ArrayDeque<Node> queue = new ArrayDeque<>();
+    reached.add(start);
+    queue.add(start);
+    while (!queue.isEmpty()) {
+      for (Node neighbour : queue.poll().links) {
+        if (neighbour != null && reached.add(neighbour)) {
+          queue.add(neighbour);
+        }
+      }
+    }
+    return reached;
+  }
+
+  static final class Node {
+    TileEntity tileEntity; // Only replaced when an unloaded chunk comes back, see rebind
+    final long position;
+    final Node[] links = new Node[6];
+    byte emitMask = 0; // Bit set per direction when energy can flow from this node to the linked node
+    byte acceptMask = 0; // Bit set per direction when energy can flow from the linked node to this node
+    Component component = null;
+    // Conductor properties, cached since conductors are re-added whenever their type changes
+    final boolean conductor;
+    final double conductionLoss;
+    final int insulationEnergyAbsorption;
+    final int insulationBreakdownEnergy;
+    final int conductorBreakdownEnergy;
+    final boolean notifiesDemand;
+    boolean demanding; // Only maintained for sinks that notify their demand changes
+    boolean unloaded = false; // Part of an unloaded chunk, never crossed by discovery
+    boolean removing = false; // Queued for removal, see EnergyNet.removeTileEntity
+    boolean metered = false; // Conductors only count conducted energy once something asked for it
+    long energyConducted = 0L;
+    Chain chain = null;
+
+    Node(TileEntity tileEntity) {
+      this.tileEntity = tileEntity;
+      this.position = pack(tileEntity);
+      this.conductor = tileEntity instanceof IEnergyConductor;
+      if (conductor) {
+        IEnergyConductor iEnergyConductor = (IEnergyConductor) tileEntity;
+        conductionLoss = Math.max(iEnergyConductor.getConductionLoss(), EnergyNet.minConductionLoss);
+        insulationEnergyAbsorption = iEnergyConductor.getInsulationEnergyAbsorption();
+        insulationBreakdownEnergy = iEnergyConductor.getInsulationBreakdownEnergy();
+        conductorBreakdownEnergy = iEnergyConductor.getConductorBreakdownEnergy();
+      }
+      else {
+        conductionLoss = 0.0D;
+        insulationEnergyAbsorption = Integer.MAX_VALUE;
+        insulationBreakdownEnergy = Integer.MAX_VALUE;
+        conductorBreakdownEnergy = Integer.MAX_VALUE;
+      }
+      this.notifiesDemand = tileEntity instanceof IEnergyDemandNotifier;
+      this.demanding = notifiesDemand && ((IEnergySink) tileEntity).demandsEnergy();
+    }
+
+    private Node(Node node) { // Unlinked copy for snapshots
+      this.tileEntity = node.tileEntity;
+      this.position = node.position;
+      this.emitMask = node.emitMask;
+      this.acceptMask = node.acceptMask;
+      this.conductor = node.conductor;
+      this.conductionLoss = node.conductionLoss;
+      this.insulationEnergyAbsorption = node.insulationEnergyAbsorption;
+      this.insulationBreakdownEnergy = node.insulationBreakdownEnergy;
+      this.conductorBreakdownEnergy = node.conductorBreakdownEnergy;
+      this.notifiesDemand = node.notifiesDemand;
+      this.unloaded = node.unloaded;
+    }
+
+    boolean isBlocked() {
+      return unloaded || removing;
+    }
+
+    long hash() {
+      long hash = position * 0x9E3779B97F4A7C15L ^ tileEntity.getClass().getName().hashCode();
+      return (hash ^ Double.doubleToLongBits(conductionLoss)) * 0xC2B2AE3D27D4EB4FL;
+    }
+
+    boolean emitsTo(int direction) {
+      return (emitMask & 1 << direction) != 0;
+    }
+
+    boolean acceptsFrom(int direction) {
+      return (acceptMask & 1 << direction) != 0;
+    }
+
+    private void link(Direction direction, Node node, boolean emits, boolean accepts) {
+      int i = direction.ordinal();
+      links[i] = node;
+      emitMask = (byte) (emits ? emitMask | 1 << i : emitMask & ~(1 << i));
+      acceptMask = (byte) (accepts ? acceptMask | 1 << i : acceptMask & ~(1 << i));
+    }
+
+    private void unlink(Direction direction) {
+      link(direction, null, false, false);
+    }
+  }
+
+  // Run of chainable conductors between two junction nodes, searched and stored as a single weighted edge
+  static final class Chain {
+    final Node[] nodes; // Ordered from a to b
+    final Node a;
+    final Node b;
+    final int aDirection; // Direction from a to the first node
+    final int bDirection; // Direction from b to the last node
+    final double loss;
+    int minX = Integer.MAX_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int minZ = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    int maxZ = Integer.MIN_VALUE;
+    int minInsulationEnergyAbsorption = Integer.MAX_VALUE;
+    int minInsulationBreakdownEnergy = Integer.MAX_VALUE;
+    int minConductorBreakdownEnergy = Integer.MAX_VALUE;
+    boolean valid = true; // Cleared once the topology around the chain changed
+    int blockedNodes = 0; // Members that are unloaded or queued for removal, kept up to date by EnergyNetGraph
+    final Set<IEnergySource> sources = new HashSet<>(); // Sources with cached paths along the chain
+
+    private Chain(Node[] nodes, Node a, int aDirection, Node b, int bDirection) {
+      this.nodes = nodes;
+      this.a = a;
+      this.aDirection = aDirection;
+      this.b = b;
+      this.bDirection = bDirection;
+      double loss = 0.0D;
+      for (Node node : nodes) {
+        loss += node.conductionLoss;
+        TileEntity tileEntity = node.tileEntity;
+        minX = Math.min(minX, tileEntity.x);
+        minY = Math.min(minY, tileEntity.y);
+        minZ = Math.min(minZ, tileEntity.z);
+        maxX = Math.max(maxX, tileEntity.x);
+        maxY = Math.max(maxY, tileEntity.y);
+        maxZ = Math.max(maxZ, tileEntity.z);
+        minInsulationEnergyAbsorption = Math.min(minInsulationEnergyAbsorption, node.insulationEnergyAbsorption);
+        minInsulationBreakdownEnergy = Math.min(minInsulationBreakdownEnergy, node.insulationBreakdownEnergy);
+        minConductorBreakdownEnergy = Math.min(minConductorBreakdownEnergy, node.conductorBreakdownEnergy);
+        if (node.isBlocked()) {
+          blockedNodes++;
+        }
+      }
+      this.loss = loss;
+    }
+
+    // The junction at the other end when entering the chain from the given junction and direction
+    Node exit(Node from, int direction) {
+      return from == a && direction == aDirection ? b : a;
+    }
+
+    // Direction from the exit junction back into the chain
+    int exitDirection(Node from, int direction) {
+      return from == a && direction == aDirection ? bDirection : aDirection;
+    }
+
+    boolean contains(long position) {
+      for (Node node : nodes) {
+        if (node.position == position) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    boolean isBlocked() {
+      return blockedNodes > 0;
+    }
+  }
+
+  static final class Component {
+    private static int versions = 0;
+    final Set<Node> nodes = new HashSet<>();
+    final Set<IEnergySource> sources = new HashSet<>();
+    private EnergyNetPositionMap<Node> snapshot = null;
+    private int snapshotVersion;
+    private int demandingSinks = 0; // Notifying sinks that currently demand energy
+    private int pollingSinks = 0; // Sinks without demand notifications, these have to be asked every time
+    int version = 0; // Unique across components, changes with the members, their loading and notified demand
+
+    // False only if no sink of the network can take energy right now
+    boolean demandsEnergy() {
+      return demandingSinks > 0 || pollingSinks > 0;
+    }
+
+    // Whether demand of some sinks changes without the component noticing
+    boolean pollsDemand() {
+      return pollingSinks > 0;
+    }
+
+    private void changed() {
+      version = ++versions;
+    }
+
+    private void addNode(Node node) {
+      node.component = this;
+      nodes.add(node);
+      if (node.tileEntity instanceof IEnergySource) {
+        sources.add((IEnergySource) node.tileEntity);
+      }
+      count(node, 1);
+      changed();
+    }
+
+    private void removeNode(Node node) {
+      nodes.remove(node);
+      if (node.tileEntity instanceof IEnergySource) {
+        sources.remove(node.tileEntity);
+      }
+      count(node, -1);
+      changed();
+    }
+
+    private void count(Node node, int delta) {
+      if (node.notifiesDemand) {
+        if (node.demanding) {
+          demandingSinks += delta;
+        }
+      }
+      else if (node.tileEntity instanceof IEnergySink) {
+        pollingSinks += delta;
+      }
+    }
+  }
+}
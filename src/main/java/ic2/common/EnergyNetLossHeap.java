@@ -0,0 +1,139 @@
+package ic2.common;
+
+import java.util.Arrays;
+
+// Binary min-heap of packed block positions ordered by loss, supports decrease-key through an open addressing index
+final class EnergyNetLossHeap {
+  private static final long emptyKey = EnergyNetPositionMap.emptyKey;
+  private long[] keys = new long[64];
+  private double[] losses = new double[64];
+  private int size = 0;
+  private long[] indexKeys = new long[128];
+  private int[] indexSlots = new int[128];
+  private int indexSize = 0;
+
+  EnergyNetLossHeap() {
+    Arrays.fill(indexKeys, emptyKey);
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  double peekLoss() {
+    return losses[0];
+  }
+
+  // Inserts the position or lowers its loss, returns false if it is queued or was polled with a lower or equal loss
+  boolean offer(long key, double loss) {
+    int index = find(key);
+    if (indexKeys[index] == key) {
+      int slot = indexSlots[index];
+      if (slot < 0 || losses[slot] <= loss) {
+        return false;
+      }
+      losses[slot] = loss;
+      siftUp(slot);
+      return true;
+    }
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      losses = Arrays.copyOf(losses, size * 2);
+    }
+    indexKeys[index] = key;
+    indexSlots[index] = size;
+    if (++indexSize * 2 > indexKeys.length) {
+      rehash();
+    }
+    keys[size] = key;
+    losses[size] = loss;
+    siftUp(size++);
+    return true;
+  }
+
+  long poll() {
+    long key = keys[0];
+    indexSlots[find(key)] = -1; // Polled positions stay indexed so they are never queued again
+    if (--size > 0) {
+      keys[0] = keys[size];
+      losses[0] = losses[size];
+      indexSlots[find(keys[0])] = 0;
+      siftDown(0);
+    }
+    return key;
+  }
+
+  void clear() {
+    size = 0;
+    if (indexSize > 0) {
+      Arrays.fill(indexKeys, emptyKey);
+      indexSize = 0;
+    }
+  }
+
+  private void siftUp(int slot) {
+    long key = keys[slot];
+    double loss = losses[slot];
+    while (slot > 0) {
+      int parent = (slot - 1) >>> 1;
+      if (losses[parent] <= loss) {
+        break;
+      }
+      move(parent, slot);
+      slot = parent;
+    }
+    keys[slot] = key;
+    losses[slot] = loss;
+    indexSlots[find(key)] = slot;
+  }
+
+  private void siftDown(int slot) {
+    long key = keys[slot];
+    double loss = losses[slot];
+    int half = size >>> 1;
+    while (slot < half) {
+      int child = 2 * slot + 1;
+      if (child + 1 < size && losses[child + 1] < losses[child]) {
+        child++;
+      }
+      if (loss <= losses[child]) {
+        break;
+      }
+      move(child, slot);
+      slot = child;
+    }
+    keys[slot] = key;
+    losses[slot] = loss;
+    indexSlots[find(key)] = slot;
+  }
+
+  private void move(int from, int to) {
+    keys[to] = keys[from];
+    losses[to] = losses[from];
+    indexSlots[find(keys[to])] = to;
+  }
+
+  private int find(long key) {
+    int mask = indexKeys.length - 1;
+    int index = EnergyNetPositionMap.hash(key) & mask;
+    while (indexKeys[index] != emptyKey && indexKeys[index] != key) {
+      index = index + 1 & mask;
+    }
+    return index;
+  }
+
+  private void rehash() {
+    long[] oldKeys = indexKeys;
+    int[] oldSlots = indexSlots;
+    indexKeys = new long[oldKeys.length * 2];
+    indexSlots = new int[oldKeys.length * 2];
+    Arrays.fill(indexKeys, emptyKey);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != emptyKey) {
+        int index = find(oldKeys[i]);
+        indexKeys[index] = oldKeys[i];
+        indexSlots[index] = oldSlots[i];
+      }
+    }
+  }
+}
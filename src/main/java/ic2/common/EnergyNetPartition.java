@@ -0,0 +1,98 @@
+package ic2.common;
+
+import net.minecraft.server.TileEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+// The batched offers of one network. Planning only reads the offers, their paths and the demand snapshot taken on the
+// main thread, so networks are planned in parallel while injecting the planned packets stays on the main thread.
+final class EnergyNetPartition {
+  final List<EnergyNet.EnergyOffer> energyOffers;
+  final List<List<EnergyNet.EnergyPath>> offerEnergyPaths = new ArrayList<>();
+  final IdentityHashMap<TileEntity, Boolean> targetToDemandMap = new IdentityHashMap<>();
+  int size = 0; // Planned packets, each goes from offer offerIds[n] along paths[n] with packets[n] EU
+  int[] offerIds = new int[16];
+  EnergyNet.EnergyPath[] paths = new EnergyNet.EnergyPath[16];
+  int[] packets = new int[16];
+
+  EnergyNetPartition(List<EnergyNet.EnergyOffer> energyOffers) {
+    this.energyOffers = energyOffers;
+  }
+
+  // Same allocation as the flow solver: every source splits its offer over the demanding sinks by inverse loss and by
+  // the number of sources competing for a sink, in packets no larger than it emitted itself
+  void plan() {
+    IdentityHashMap<TileEntity, int[]> targetToSupplierCountMap = new IdentityHashMap<>();
+    for (List<EnergyNet.EnergyPath> energyPaths : offerEnergyPaths) {
+      if (energyPaths == null) {
+        continue;
+      }
+      for (EnergyNet.EnergyPath energyPath : energyPaths) {
+        if (targetToDemandMap.get(energyPath.target)) {
+          targetToSupplierCountMap.computeIfAbsent(energyPath.target, key -> new int[1])[0]++;
+        }
+      }
+    }
+
+    for (int n = 0; n < energyOffers.size(); n++) {
+      List<EnergyNet.EnergyPath> energyPaths = offerEnergyPaths.get(n);
+      if (energyPaths == null) {
+        continue;
+      }
+      EnergyNet.EnergyOffer energyOffer = energyOffers.get(n);
+      long d = 0L;
+      for (EnergyNet.EnergyPath energyPath : energyPaths) {
+        if (targetToDemandMap.get(energyPath.target)) {
+          d += weight(energyPath, targetToSupplierCountMap);
+        }
+      }
+      if (d == 0L) {
+        continue;
+      }
+      int i = energyOffer.amount;
+      int remaining = i;
+      for (EnergyNet.EnergyPath energyPath : energyPaths) {
+        if (!targetToDemandMap.get(energyPath.target)) {
+          continue;
+        }
+        int share = (int) (i * weight(energyPath, targetToSupplierCountMap) / d);
+        if (remaining - share < energyOffer.packetSize) { // Rounding leftovers go to the last packet of the offer
+          share = remaining;
+        }
+        remaining -= share;
+        while (share > energyPath.lossFloor) {
+          int k = Math.min(share, energyOffer.packetSize);
+          if (k <= energyPath.lossFloor) {
+            break;
+          }
+          add(n, energyPath, k);
+          share -= k;
+        }
+        remaining += share;
+        if (remaining == 0) {
+          break;
+        }
+      }
+    }
+  }
+
+  private static long weight(EnergyNet.EnergyPath energyPath,
+                             IdentityHashMap<TileEntity, int[]> targetToSupplierCountMap) {
+    return Math.max(energyPath.inverseLoss / targetToSupplierCountMap.get(energyPath.target)[0], 1L);
+  }
+
+  private void add(int offerId, EnergyNet.EnergyPath energyPath, int k) {
+    if (size == packets.length) {
+      offerIds = Arrays.copyOf(offerIds, size * 2);
+      paths = Arrays.copyOf(paths, size * 2);
+      packets = Arrays.copyOf(packets, size * 2);
+    }
+    offerIds[size] = offerId;
+    paths[size] = energyPath;
+    packets[size] = k;
+    size++;
+  }
+}
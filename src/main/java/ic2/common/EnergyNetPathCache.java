@@ -0,0 +1,365 @@
+package ic2.common;
+
+import ic2.api.IEnergySink;
+import ic2.api.IEnergySource;
+import net.minecraft.server.TileEntity;
+import net.minecraft.server.World;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Path tables of a world kept on disk across restarts, a table is only restored while every chunk it touches still
+// hashes the same as when it was saved. Chains are stored by their ends and found again in the live graph. A table that
+// doesn't match is dropped and its source discovered live, chunks loaded later add to the network as usual.
+final class EnergyNetPathCache {
+  private static final int formatVersion = 2;
+  private static ExecutorService writer = null; // Compresses and writes saves off the main thread, one at a time
+  private final File file;
+  private final EnergyNetPositionMap<Entry> positionToEntryMap = new EnergyNetPositionMap<>();
+  private final EnergyNetPositionMap<Long> chunkToHashMap = new EnergyNetPositionMap<>();
+
+  EnergyNetPathCache(File file) {
+    this.file = file;
+  }
+
+  boolean contains(long position) {
+    return positionToEntryMap.containsKey(position);
+  }
+
+  void load() {
+    awaitWrites();
+    if (!file.exists()) {
+      return;
+    }
+    try (DataInputStream datainputstream = new DataInputStream(
+        new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+      if (datainputstream.readInt() != formatVersion) {
+        return;
+      }
+      for (int i = datainputstream.readInt(); i > 0; i--) {
+        chunkToHashMap.put(datainputstream.readLong(), datainputstream.readLong());
+      }
+      for (int i = datainputstream.readInt(); i > 0; i--) {
+        long position = datainputstream.readLong();
+        Entry entry = new Entry(datainputstream.readInt(), datainputstream.readInt());
+        for (int j = 0; j < entry.paths.length; j++) {
+          EnergyNet.EnergyPath energyPath = new EnergyNet.EnergyPath();
+          entry.targets[j] = datainputstream.readLong();
+          energyPath.targetDirection = EnergyNetGraph.directions[datainputstream.readByte()];
+          energyPath.setLoss(datainputstream.readDouble());
+          energyPath.minX = datainputstream.readInt();
+          energyPath.minY = datainputstream.readInt();
+          energyPath.minZ = datainputstream.readInt();
+          energyPath.maxX = datainputstream.readInt();
+          energyPath.maxY = datainputstream.readInt();
+          energyPath.maxZ = datainputstream.readInt();
+          energyPath.minInsulationEnergyAbsorption = datainputstream.readInt();
+          energyPath.minInsulationBreakdownEnergy = datainputstream.readInt();
+          energyPath.minConductorBreakdownEnergy = datainputstream.readInt();
+          energyPath.conductors = new long[datainputstream.readInt()];
+          for (int k = 0; k < energyPath.conductors.length; k++) {
+            energyPath.conductors[k] = datainputstream.readLong();
+          }
+          entry.chains[j] = new ChainEnds[datainputstream.readInt()];
+          for (int k = 0; k < entry.chains[j].length; k++) {
+            entry.chains[j][k] = new ChainEnds(datainputstream.readLong(), datainputstream.readLong(),
+                datainputstream.readInt(), datainputstream.readDouble());
+          }
+          entry.paths[j] = energyPath;
+        }
+        positionToEntryMap.put(position, entry);
+      }
+    } catch (IOException | RuntimeException e) {
+      System.out.println("[IC2] Discarding unreadable energy net cache " + file.getName());
+      positionToEntryMap.clear();
+      chunkToHashMap.clear();
+    }
+  }
+
+  // Returns the saved table of the source if it is still valid, null if the source has to be discovered. Either way the
+  // entry is used up.
+  List<EnergyNet.EnergyPath> restore(IEnergySource iEnergySource, EnergyNetGraph graph) {
+    long position = EnergyNetGraph.pack((TileEntity) iEnergySource);
+    Entry entry = positionToEntryMap.remove(position);
+    if (entry == null || entry.maxEnergyOutput != iEnergySource.getMaxEnergyOutput() ||
+        !isUnchanged(position, entry, graph)) {
+      return null;
+    }
+    return resolve(entry, graph);
+  }
+
+  private boolean isUnchanged(long position, Entry entry, EnergyNetGraph graph) {
+    if (!isUnchanged(EnergyNetGraph.chunkOf(position), graph)) {
+      return false;
+    }
+    for (int i = 0; i < entry.paths.length; i++) {
+      if (!isUnchanged(EnergyNetGraph.chunkOf(entry.targets[i]), graph)) {
+        return false;
+      }
+      for (long conductor : entry.paths[i].conductors) {
+        if (!isUnchanged(EnergyNetGraph.chunkOf(conductor), graph)) {
+          return false;
+        }
+      }
+      for (ChainEnds chainEnds : entry.chains[i]) {
+        if (!isUnchanged(EnergyNetGraph.chunkOf(chainEnds.first), graph) ||
+            !isUnchanged(EnergyNetGraph.chunkOf(chainEnds.last), graph)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private boolean isUnchanged(long chunk, EnergyNetGraph graph) {
+    Long hash = chunkToHashMap.get(chunk);
+    return hash != null && hash == graph.getChunkHash(chunk);
+  }
+
+  private static List<EnergyNet.EnergyPath> resolve(Entry entry, EnergyNetGraph graph) {
+    List<EnergyNet.EnergyPath> energyPaths = new ArrayList<>(entry.paths.length);
+    for (int i = 0; i < entry.paths.length; i++) {
+      EnergyNetGraph.Node target = graph.getNode(entry.targets[i]);
+      if (target == null || !(target.tileEntity instanceof IEnergySink)) {
+        return null;
+      }
+      for (long conductor : entry.paths[i].conductors) {
+        EnergyNetGraph.Node node = graph.getNode(conductor);
+        if (node == null || !node.conductor) {
+          return null;
+        }
+      }
+      EnergyNetGraph.Chain[] chains = new EnergyNetGraph.Chain[entry.chains[i].length];
+      for (int j = 0; j < chains.length; j++) {
+        chains[j] = entry.chains[i][j].resolve(graph);
+        if (chains[j] == null) {
+          return null;
+        }
+      }
+      entry.paths[i].chains = chains.length == 0 ? EnergyNet.EnergyPath.noChains : chains;
+      entry.paths[i].target = target.tileEntity;
+      energyPaths.add(entry.paths[i]);
+    }
+    return energyPaths;
+  }
+
+  // Writes the current tables plus restorable entries that weren't needed yet, chunks of those have to be unchanged
+  // or unloaded
+  void save(World world, EnergyNetGraph graph,
+            Map<IEnergySource, List<EnergyNet.EnergyPath>> energySourceToEnergyPathMap) {
+    EnergyNetPositionMap<Long> hashes = new EnergyNetPositionMap<>();
+    List<Long> positions = new ArrayList<>();
+    List<Entry> entries = new ArrayList<>();
+
+    for (Map.Entry<IEnergySource, List<EnergyNet.EnergyPath>> mapEntry : energySourceToEnergyPathMap.entrySet()) {
+      List<EnergyNet.EnergyPath> energyPaths = mapEntry.getValue();
+      if (energyPaths.isEmpty()) {
+        continue;
+      }
+      long position = EnergyNetGraph.pack((TileEntity) mapEntry.getKey());
+      Entry entry = new Entry(mapEntry.getKey().getMaxEnergyOutput(), energyPaths.size());
+      for (int i = 0; i < entry.paths.length; i++) {
+        EnergyNet.EnergyPath energyPath = energyPaths.get(i);
+        entry.targets[i] = EnergyNetGraph.pack(energyPath.target);
+        entry.paths[i] = energyPath;
+        entry.chains[i] = chainEndsOf(energyPath);
+      }
+      hashes.put(EnergyNetGraph.chunkOf(position), graph.getChunkHash(EnergyNetGraph.chunkOf(position)));
+      for (int i = 0; i < entry.paths.length; i++) {
+        long chunk = EnergyNetGraph.chunkOf(entry.targets[i]);
+        hashes.put(chunk, graph.getChunkHash(chunk));
+        for (long conductor : entry.paths[i].conductors) {
+          chunk = EnergyNetGraph.chunkOf(conductor);
+          hashes.put(chunk, graph.getChunkHash(chunk));
+        }
+        for (ChainEnds chainEnds : entry.chains[i]) {
+          chunk = EnergyNetGraph.chunkOf(chainEnds.first);
+          hashes.put(chunk, graph.getChunkHash(chunk));
+          chunk = EnergyNetGraph.chunkOf(chainEnds.last);
+          hashes.put(chunk, graph.getChunkHash(chunk));
+        }
+      }
+      positions.add(position);
+      entries.add(entry);
+    }
+
+    for (long position : positionToEntryMap.keys()) {
+      Entry entry = positionToEntryMap.get(position);
+      List<Long> chunks = new ArrayList<>();
+      chunks.add(EnergyNetGraph.chunkOf(position));
+      for (int i = 0; i < entry.paths.length; i++) {
+        chunks.add(EnergyNetGraph.chunkOf(entry.targets[i]));
+        for (long conductor : entry.paths[i].conductors) {
+          chunks.add(EnergyNetGraph.chunkOf(conductor));
+        }
+        for (ChainEnds chainEnds : entry.chains[i]) {
+          chunks.add(EnergyNetGraph.chunkOf(chainEnds.first));
+          chunks.add(EnergyNetGraph.chunkOf(chainEnds.last));
+        }
+      }
+      boolean keep = true;
+      for (long chunk : chunks) {
+        Long savedHash = chunkToHashMap.get(chunk);
+        Long hash = hashes.get(chunk);
+        boolean loaded = world.isChunkLoaded(EnergyNetGraph.unpackX(chunk), EnergyNetGraph.unpackZ(chunk));
+        if (savedHash == null || (hash != null && !hash.equals(savedHash)) ||
+            (loaded && graph.getChunkHash(chunk) != savedHash)) {
+          keep = false;
+          break;
+        }
+      }
+      if (keep) {
+        for (long chunk : chunks) {
+          hashes.put(chunk, chunkToHashMap.get(chunk));
+        }
+        positions.add(position);
+        entries.add(entry);
+      }
+    }
+
+    // Only the uncompressed snapshot is built here, compressing and writing happen on the writer thread
+    ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream();
+    try (DataOutputStream dataoutputstream = new DataOutputStream(bytearrayoutputstream)) {
+      dataoutputstream.writeInt(formatVersion);
+      dataoutputstream.writeInt(hashes.size());
+      for (long chunk : hashes.keys()) {
+        dataoutputstream.writeLong(chunk);
+        dataoutputstream.writeLong(hashes.get(chunk));
+      }
+      dataoutputstream.writeInt(entries.size());
+      for (int i = 0; i < entries.size(); i++) {
+        Entry entry = entries.get(i);
+        dataoutputstream.writeLong(positions.get(i));
+        dataoutputstream.writeInt(entry.maxEnergyOutput);
+        dataoutputstream.writeInt(entry.paths.length);
+        for (int j = 0; j < entry.paths.length; j++) {
+          EnergyNet.EnergyPath energyPath = entry.paths[j];
+          dataoutputstream.writeLong(entry.targets[j]);
+          dataoutputstream.writeByte(energyPath.targetDirection.ordinal());
+          dataoutputstream.writeDouble(energyPath.loss);
+          dataoutputstream.writeInt(energyPath.minX);
+          dataoutputstream.writeInt(energyPath.minY);
+          dataoutputstream.writeInt(energyPath.minZ);
+          dataoutputstream.writeInt(energyPath.maxX);
+          dataoutputstream.writeInt(energyPath.maxY);
+          dataoutputstream.writeInt(energyPath.maxZ);
+          dataoutputstream.writeInt(energyPath.minInsulationEnergyAbsorption);
+          dataoutputstream.writeInt(energyPath.minInsulationBreakdownEnergy);
+          dataoutputstream.writeInt(energyPath.minConductorBreakdownEnergy);
+          dataoutputstream.writeInt(energyPath.conductors.length);
+          for (long conductor : energyPath.conductors) {
+            dataoutputstream.writeLong(conductor);
+          }
+          dataoutputstream.writeInt(entry.chains[j].length);
+          for (ChainEnds chainEnds : entry.chains[j]) {
+            dataoutputstream.writeLong(chainEnds.first);
+            dataoutputstream.writeLong(chainEnds.last);
+            dataoutputstream.writeInt(chainEnds.length);
+            dataoutputstream.writeDouble(chainEnds.loss);
+          }
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return;
+    }
+    awaitWrites(); // Keeps at most one snapshot queued
+    getWriter().execute(() -> write(bytearrayoutputstream));
+  }
+
+  private void write(ByteArrayOutputStream bytearrayoutputstream) {
+    File tmpFile = new File(file.getPath() + ".tmp");
+    try (OutputStream outputstream = new GZIPOutputStream(new FileOutputStream(tmpFile))) {
+      bytearrayoutputstream.writeTo(outputstream);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return;
+    }
+    if (file.exists() && !file.delete() || !tmpFile.renameTo(file)) {
+      System.out.println("[IC2] Unable to replace energy net cache " + file.getName());
+    }
+  }
+
+  // Also covers writes of caches of an earlier load of the same world, the writer runs them in order
+  static void awaitWrites() {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.submit(() -> {
+      }).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      e.getCause().printStackTrace();
+    }
+  }
+
+  private static ExecutorService getWriter() {
+    if (writer == null) {
+      writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "IC2 EnergyNet Cache Writer");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return writer;
+  }
+
+  private static ChainEnds[] chainEndsOf(EnergyNet.EnergyPath energyPath) {
+    ChainEnds[] chainEnds = new ChainEnds[energyPath.chains.length];
+    for (int i = 0; i < chainEnds.length; i++) {
+      EnergyNetGraph.Chain chain = energyPath.chains[i];
+      chainEnds[i] = new ChainEnds(chain.nodes[0].position, chain.nodes[chain.nodes.length - 1].position,
+          chain.nodes.length, chain.loss);
+    }
+    return chainEnds;
+  }
+
+  static final class Entry {
+    final int maxEnergyOutput;
+    final long[] targets;
+    final EnergyNet.EnergyPath[] paths;
+    final ChainEnds[][] chains;
+
+    Entry(int maxEnergyOutput, int size) {
+      this.maxEnergyOutput = maxEnergyOutput;
+      this.targets = new long[size];
+      this.paths = new EnergyNet.EnergyPath[size];
+      this.chains = new ChainEnds[size][];
+    }
+  }
+
+  // A chain crossed by a saved path, valid while the live graph still has a chain of the same length and loss there
+  static final class ChainEnds {
+    final long first;
+    final long last;
+    final int length;
+    final double loss;
+
+    ChainEnds(long first, long last, int length, double loss) {
+      this.first = first;
+      this.last = last;
+      this.length = length;
+      this.loss = loss;
+    }
+
+    EnergyNetGraph.Chain resolve(EnergyNetGraph graph) {
+      EnergyNetGraph.Node node = graph.getNode(first);
+      EnergyNetGraph.Chain chain = node == null ? null : graph.chainOf(node);
+      if (chain == null || chain.nodes.length != length || Math.abs(chain.loss - loss) > 1.0E-9D) {
+        return null;
+      }
+      long a = chain.nodes[0].position;
+      long b = chain.nodes[length - 1].position;
+      return a == first && b == last || a == last && b == first ? chain : null;
+    }
+  }
+}
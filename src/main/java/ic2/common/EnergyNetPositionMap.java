@@ -0,0 +1,142 @@
+package ic2.common;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// Open addressing map from packed block positions to values, avoids boxing the keys and allocating entries
+final class EnergyNetPositionMap<V> {
+  static final long emptyKey = Long.MIN_VALUE; // Not a valid packed position, x would be out of world bounds
+  private long[] keys;
+  private Object[] values;
+  private int size = 0;
+
+  EnergyNetPositionMap() {
+    this(16);
+  }
+
+  EnergyNetPositionMap(int expectedSize) {
+    int capacity = 16;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    keys = new long[capacity];
+    values = new Object[capacity];
+    Arrays.fill(keys, emptyKey);
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  boolean containsKey(long key) {
+    return keys[find(key)] == key;
+  }
+
+  @SuppressWarnings("unchecked")
+  V get(long key) {
+    return (V) values[find(key)];
+  }
+
+  @SuppressWarnings("unchecked")
+  V put(long key, V value) {
+    int index = find(key);
+    V previous = (V) values[index];
+    values[index] = value;
+    if (keys[index] != key) {
+      keys[index] = key;
+      if (++size * 2 > keys.length) {
+        rehash();
+      }
+    }
+    return previous;
+  }
+
+  @SuppressWarnings("unchecked")
+  V remove(long key) {
+    int index = find(key);
+    if (keys[index] != key) {
+      return null;
+    }
+    V previous = (V) values[index];
+    size--;
+    // Backward shift deletion keeps probe chains intact without tombstones
+    int mask = keys.length - 1;
+    int next = index;
+    while (true) {
+      next = next + 1 & mask;
+      if (keys[next] == emptyKey) {
+        break;
+      }
+      int home = hash(keys[next]) & mask;
+      if ((next - home & mask) >= (next - index & mask)) {
+        keys[index] = keys[next];
+        values[index] = values[next];
+        index = next;
+      }
+    }
+    keys[index] = emptyKey;
+    values[index] = null;
+    return previous;
+  }
+
+  void clear() {
+    if (size > 0) {
+      Arrays.fill(keys, emptyKey);
+      Arrays.fill(values, null);
+      size = 0;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  void forEachValue(Consumer<V> consumer) {
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != emptyKey) {
+        consumer.accept((V) values[i]);
+      }
+    }
+  }
+
+  long[] keys() {
+    long[] result = new long[size];
+    int j = 0;
+    for (long key : keys) {
+      if (key != emptyKey) {
+        result[j++] = key;
+      }
+    }
+    return result;
+  }
+
+  private int find(long key) {
+    int mask = keys.length - 1;
+    int index = hash(key) & mask;
+    while (keys[index] != emptyKey && keys[index] != key) {
+      index = index + 1 & mask;
+    }
+    return index;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new long[oldKeys.length * 2];
+    values = new Object[oldKeys.length * 2];
+    Arrays.fill(keys, emptyKey);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != emptyKey) {
+        int index = find(oldKeys[i]);
+        keys[index] = oldKeys[i];
+        values[index] = oldValues[i];
+      }
+    }
+  }
+
+  static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ h >>> 32);
+  }
+}
@@ -0,0 +1,29 @@
+package ic2.common;
+
+import forge.ISaveEventHandler;
+import net.minecraft.server.Chunk;
+import net.minecraft.server.NBTTagCompound;
+import net.minecraft.server.World;
+
+public class EnergyNetSaveHandler implements ISaveEventHandler {
+  public void onWorldLoad(World world) {
+    WorldData.get(world);
+  }
+  
+  public void onWorldSave(World world) {
+    EnergyNet.onWorldSave(world);
+  }
+  
+  public void onChunkLoad(World world, Chunk chunk) {
+  }
+  
+  public void onChunkUnload(World world, Chunk chunk) {
+    EnergyNet.onChunkUnload(world, chunk);
+  }
+  
+  public void onChunkSaveData(World world, Chunk chunk, NBTTagCompound nbttagcompound) {
+  }
+  
+  public void onChunkLoadData(World world, Chunk chunk, NBTTagCompound nbttagcompound) {
+  }
+}
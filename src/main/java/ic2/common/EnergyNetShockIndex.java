@@ -0,0 +1,90 @@
+package ic2.common;
+
+import net.minecraft.server.AxisAlignedBB;
+import net.minecraft.server.EntityLiving;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Conductors that conducted more than their insulation absorbs during a tick, intersected once per tick with the living
+// entities bucketed by chunk section instead of querying the world per path and packet
+final class EnergyNetShockIndex {
+  private static final int cellShift = 4;
+  private final EnergyNetPositionMap<int[]> positionToHeatMap = new EnergyNetPositionMap<>();
+
+  boolean isEmpty() {
+    return positionToHeatMap.isEmpty();
+  }
+
+  void heat(long position, int energy) {
+    int[] heat = positionToHeatMap.get(position);
+    if (heat == null) {
+      positionToHeatMap.put(position, new int[] {energy});
+    }
+    else {
+      heat[0] += energy;
+    }
+  }
+
+  // Every entity gets the energy of the hottest conductor it touches, like the original per packet query did
+  void shock(List<?> entities, Map<EntityLiving, Integer> entityLivingToShockEnergyMap) {
+    if (positionToHeatMap.isEmpty()) {
+      return;
+    }
+    EnergyNetPositionMap<List<EntityLiving>> cellToEntityLivingMap = new EnergyNetPositionMap<>();
+    for (Object object : entities) {
+      if (!(object instanceof EntityLiving) || ((EntityLiving) object).dead) {
+        continue;
+      }
+      EntityLiving entityLiving = (EntityLiving) object;
+      AxisAlignedBB boundingBox = entityLiving.boundingBox;
+      for (int x = (int) Math.floor(boundingBox.a) >> cellShift; x <= (int) Math.floor(boundingBox.d) >> cellShift; x++) {
+        for (int y = (int) Math.floor(boundingBox.b) >> cellShift; y <= (int) Math.floor(boundingBox.e) >> cellShift; y++) {
+          for (int z = (int) Math.floor(boundingBox.c) >> cellShift; z <= (int) Math.floor(boundingBox.f) >> cellShift;
+               z++) {
+            long cell = EnergyNetGraph.pack(x, y, z);
+            List<EntityLiving> list = cellToEntityLivingMap.get(cell);
+            if (list == null) {
+              list = new ArrayList<>(2);
+              cellToEntityLivingMap.put(cell, list);
+            }
+            list.add(entityLiving);
+          }
+        }
+      }
+    }
+
+    IdentityHashMap<EntityLiving, int[]> entityLivingToHeatMap = new IdentityHashMap<>();
+    for (long position : positionToHeatMap.keys()) {
+      int heat = positionToHeatMap.get(position)[0];
+      int px = EnergyNetGraph.unpackX(position);
+      int py = EnergyNetGraph.unpackY(position);
+      int pz = EnergyNetGraph.unpackZ(position);
+      for (int x = px - 1 >> cellShift; x <= px + 1 >> cellShift; x++) {
+        for (int y = py - 1 >> cellShift; y <= py + 1 >> cellShift; y++) {
+          for (int z = pz - 1 >> cellShift; z <= pz + 1 >> cellShift; z++) {
+            List<EntityLiving> list = cellToEntityLivingMap.get(EnergyNetGraph.pack(x, y, z));
+            if (list == null) {
+              continue;
+            }
+            for (EntityLiving entityLiving : list) {
+              AxisAlignedBB boundingBox = entityLiving.boundingBox;
+              if (boundingBox.d > px - 1 && boundingBox.a < px + 2 && boundingBox.e > py - 1 &&
+                  boundingBox.b < py + 2 && boundingBox.f > pz - 1 && boundingBox.c < pz + 2) {
+                int[] max = entityLivingToHeatMap.computeIfAbsent(entityLiving, key -> new int[1]);
+                max[0] = Math.max(max[0], heat);
+              }
+            }
+          }
+        }
+      }
+    }
+    positionToHeatMap.clear();
+
+    for (Map.Entry<EntityLiving, int[]> entry : entityLivingToHeatMap.entrySet()) {
+      entityLivingToShockEnergyMap.merge(entry.getKey(), entry.getValue()[0], Integer::sum);
+    }
+  }
+}
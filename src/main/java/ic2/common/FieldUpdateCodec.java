@@ -0,0 +1,301 @@
+package ic2.common;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+// Tile entity field update packets, shared by the server writing them and the client reading them. A client that reads
+// the compact format sends the announcement (packet 4) once after connecting, it holds for the connection across
+// respawns and dimension changes. If the server has networkCompactUpdates enabled,
+// it answers with packet 5 instead of packet 0 and defines the field ids used in there with packet 6 ahead of the
+// first update using them. Field values are DataEncoder encoded in both formats. From version 2 on, an array the client
+// already got in an earlier packet 5 may come as the elements that changed since then, see encodeDiff.
+public class FieldUpdateCodec {
+  public static final int compactVersion = 1; // Chunk relative positions and field ids instead of names
+  public static final int diffVersion = 2; // Array element diffs
+  public static final int version = diffVersion; // Newest format this codec reads
+  static final int diffType = 126; // Value type of diffs, next to the null type of DataEncoder
+
+  // Packet 4, sent by the client. Clients reset their Decoder before announcing again.
+  public static byte[] encodeAnnouncement(int version) throws IOException {
+    ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream();
+    DataOutputStream dataoutputstream = new DataOutputStream(bytearrayoutputstream);
+    dataoutputstream.writeByte(4);
+    dataoutputstream.writeInt(version);
+    dataoutputstream.close();
+    return bytearrayoutputstream.toByteArray();
+  }
+
+  // Packet 6 with the names of the given field ids, written by the server
+  public static byte[] encodeFieldNames(BitSet fieldIds, List<String> fieldNames) throws IOException {
+    ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream();
+    DataOutputStream dataoutputstream = new DataOutputStream(bytearrayoutputstream);
+    dataoutputstream.writeByte(6);
+    writeVarInt(dataoutputstream, fieldIds.cardinality());
+    for (int id = fieldIds.nextSetBit(0); id >= 0; id = fieldIds.nextSetBit(id + 1)) {
+      writeVarInt(dataoutputstream, id);
+      dataoutputstream.writeUTF(fieldNames.get(id));
+    }
+    dataoutputstream.close();
+    return bytearrayoutputstream.toByteArray();
+  }
+
+  // Whether the DataEncoder encoded value is an array of fixed size elements
+  public static boolean isArray(byte[] data) {
+    return data.length >= 3 && elementSize(data[0]) > 0;
+  }
+
+  // Bytes per element of the array types of DataEncoder, boolean arrays are diffed by their packed bytes
+  private static int elementSize(int type) {
+    switch (type) {
+      case 1:
+        return 4;
+      case 3:
+        return 2;
+      case 5:
+      case 9:
+        return 1;
+      case 7:
+        return 8;
+      default:
+        return 0;
+    }
+  }
+
+  // The elements that differ from the array the client has, written as index gap plus element bytes. Null if the
+  // arrays differ in type or length or the diff isn't smaller than the whole value.
+  public static byte[] encodeDiff(byte[] base, byte[] data) throws IOException {
+    if (!isArray(data) || base.length != data.length || base[0] != data[0] || base[1] != data[1] ||
+        base[2] != data[2]) {
+      return null;
+    }
+    int size = elementSize(data[0]);
+    int count = 0;
+    for (int k = 3; k < data.length; k += size) {
+      if (!elementEquals(base, data, k, size)) {
+        count++;
+      }
+    }
+    ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream();
+    DataOutputStream dataoutputstream = new DataOutputStream(bytearrayoutputstream);
+    dataoutputstream.writeByte(diffType);
+    writeVarInt(dataoutputstream, count);
+    int last = -1;
+    for (int k = 3; k < data.length; k += size) {
+      if (!elementEquals(base, data, k, size)) {
+        int index = (k - 3) / size;
+        writeVarInt(dataoutputstream, index - last - 1);
+        dataoutputstream.write(data, k, size);
+        last = index;
+      }
+    }
+    dataoutputstream.close();
+    return bytearrayoutputstream.size() < data.length ? bytearrayoutputstream.toByteArray() : null;
+  }
+
+  private static boolean elementEquals(byte[] base, byte[] data, int offset, int size) {
+    for (int k = offset; k < offset + size; k++) {
+      if (base[k] != data[k]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static void writeVarInt(DataOutputStream dataoutputstream, int i) throws IOException {
+    while ((i & ~0x7F) != 0) {
+      dataoutputstream.writeByte(i & 0x7F | 0x80);
+      i >>>= 7;
+    }
+    dataoutputstream.writeByte(i);
+  }
+
+  // Zigzag encoded, so small negative deltas stay short too
+  public static void writeSignedVarInt(DataOutputStream dataoutputstream, int i) throws IOException {
+    writeVarInt(dataoutputstream, i << 1 ^ i >> 31);
+  }
+
+  public static int readVarInt(DataInputStream datainputstream) throws IOException {
+    int i = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = datainputstream.readUnsignedByte();
+      i |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return i;
+      }
+    }
+    throw new IOException("VarInt too long");
+  }
+
+  public static int readSignedVarInt(DataInputStream datainputstream) throws IOException {
+    int i = readVarInt(datainputstream);
+    return i >>> 1 ^ -(i & 1);
+  }
+
+  // Writes the body of packet 0 or 5, the stream is the GZIP stream following the packet type
+  public static class Encoder {
+    private final DataOutputStream dataoutputstream;
+    private final boolean compact;
+    private int chunkX = 0;
+    private int chunkZ = 0;
+
+    public Encoder(DataOutputStream dataoutputstream, int dimension, boolean compact) throws IOException {
+      this.dataoutputstream = dataoutputstream;
+      this.compact = compact;
+      if (compact) {
+        writeSignedVarInt(dataoutputstream, dimension);
+      }
+      else {
+        dataoutputstream.writeInt(dimension);
+      }
+    }
+
+    // The compact format replaces the absolute coordinates with the chunk delta to the previous field plus the
+    // position within the chunk, and the UTF-16 field name with its varint id
+    public void writeField(int x, int y, int z, String field, int fieldId, byte[] data) throws IOException {
+      if (compact) {
+        writeSignedVarInt(dataoutputstream, (x >> 4) - chunkX);
+        writeSignedVarInt(dataoutputstream, (z >> 4) - chunkZ);
+        chunkX = x >> 4;
+        chunkZ = z >> 4;
+        dataoutputstream.writeByte((x & 15) << 4 | z & 15);
+        dataoutputstream.writeByte(y);
+        writeVarInt(dataoutputstream, fieldId);
+      }
+      else {
+        dataoutputstream.writeInt(x);
+        dataoutputstream.writeInt(y);
+        dataoutputstream.writeInt(z);
+        dataoutputstream.writeShort(field.length());
+        dataoutputstream.writeChars(field);
+      }
+      dataoutputstream.write(data);
+    }
+  }
+
+  // Client side state of one connection: the field ids the server defined so far and the last value of every array
+  // field received in packet 5, which diffs apply to
+  public static class Decoder {
+    private final Map<Integer, String> idToFieldMap = new HashMap<>();
+    private final Map<List<Object>, byte[]> fieldToArrayMap = new HashMap<>();
+
+    // Reads the payload of packet 0, 5 or 6, returns the field updates it carries
+    public List<Update> decode(byte[] abyte0) throws IOException {
+      DataInputStream datainputstream = new DataInputStream(new ByteArrayInputStream(abyte0));
+      int type = datainputstream.readUnsignedByte();
+      if (type == 6) {
+        for (int n = readVarInt(datainputstream); n > 0; n--) {
+          int id = readVarInt(datainputstream);
+          idToFieldMap.put(id, datainputstream.readUTF());
+        }
+        return Collections.emptyList();
+      }
+      if (type != 0 && type != 5) {
+        throw new IOException("Not a field update packet: " + type);
+      }
+      boolean compact = type == 5;
+      datainputstream = new DataInputStream(new GZIPInputStream(datainputstream));
+      int dimension = compact ? readSignedVarInt(datainputstream) : datainputstream.readInt();
+      List<Update> updates = new ArrayList<>();
+      int chunkX = 0;
+      int chunkZ = 0;
+      while (true) {
+        int x;
+        int y;
+        int z;
+        String field;
+        try {
+          x = compact ? readSignedVarInt(datainputstream) : datainputstream.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        if (compact) {
+          chunkX += x;
+          chunkZ += readSignedVarInt(datainputstream);
+          int xz = datainputstream.readUnsignedByte();
+          x = chunkX << 4 | xz >> 4;
+          z = chunkZ << 4 | xz & 15;
+          y = datainputstream.readUnsignedByte();
+          int id = readVarInt(datainputstream);
+          field = idToFieldMap.get(id);
+          if (field == null) {
+            throw new IOException("Undefined field id " + id);
+          }
+        }
+        else {
+          y = datainputstream.readInt();
+          z = datainputstream.readInt();
+          char[] ac = new char[datainputstream.readShort()];
+          for (int k = 0; k < ac.length; k++) {
+            ac[k] = datainputstream.readChar();
+          }
+          field = new String(ac);
+        }
+        Object value = compact ? readValue(datainputstream, Arrays.asList(dimension, x, y, z, field)) :
+            DataEncoder.decode(datainputstream);
+        updates.add(new Update(dimension, x, y, z, field, value));
+      }
+      return updates;
+    }
+
+    private Object readValue(DataInputStream datainputstream, List<Object> key) throws IOException {
+      int type = datainputstream.readUnsignedByte();
+      byte[] data;
+      if (type == diffType) {
+        byte[] base = fieldToArrayMap.get(key);
+        if (base == null) {
+          throw new IOException("Diff without a previous value for " + key);
+        }
+        data = base.clone();
+        int size = elementSize(data[0]);
+        int index = -1;
+        for (int n = readVarInt(datainputstream); n > 0; n--) {
+          index += readVarInt(datainputstream) + 1;
+          if (3 + (index + 1) * size > data.length) {
+            throw new IOException("Diff beyond the end of " + key);
+          }
+          datainputstream.readFully(data, 3 + index * size, size);
+        }
+      }
+      else if (elementSize(type) > 0) {
+        short length = datainputstream.readShort();
+        int bytes = type == 9 ? Math.max((length + 7) / 8, 1) : length * elementSize(type);
+        data = new byte[3 + bytes];
+        data[0] = (byte) type;
+        data[1] = (byte) (length >> 8);
+        data[2] = (byte) length;
+        datainputstream.readFully(data, 3, bytes);
+      }
+      else {
+        InputStream inputstream = new SequenceInputStream(new ByteArrayInputStream(new byte[]{(byte) type}),
+            datainputstream);
+        return DataEncoder.decode(new DataInputStream(inputstream));
+      }
+      fieldToArrayMap.put(key, data);
+      return DataEncoder.decode(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    public void reset() {
+      idToFieldMap.clear();
+      fieldToArrayMap.clear();
+    }
+  }
+
+  public static class Update {
+    public final int dimension;
+    public final int x;
+    public final int y;
+    public final int z;
+    public final String field;
+    public final Object value;
+
+    Update(int dimension, int x, int y, int z, String field, Object value) {
+      this.dimension = dimension;
+      this.x = x;
+      this.y = y;
+      this.z = z;
+      this.field = field;
+      this.value = value;
+    }
+  }
+}
@@ -2,7 +2,7 @@ package ic2.common;
 
 import ic2.api.Direction;
 import ic2.api.IElectricItem;
-import ic2.api.IEnergySource;
+import ic2.api.IEnergyRefundable;
 import ic2.platform.AudioManager;
 import ic2.platform.AudioSource;
 import ic2.platform.Platform;
@@ -10,7 +10,7 @@ import net.minecraft.server.*;
 
 import java.util.Random;
 
-public abstract class TileEntityBaseGenerator extends TileEntityMachine implements IEnergySource, IHasGui {
+public abstract class TileEntityBaseGenerator extends TileEntityMachine implements IEnergyRefundable, IHasGui {
   public static Random random = new Random();
   public final short maxStorage;
   public int fuel = 0;
@@ -140,7 +140,13 @@ public abstract class TileEntityBaseGenerator extends TileEntityMachine implemen
   public abstract boolean gainFuel();
   
   public int sendEnergy(int i) {
-    return EnergyNet.getForWorld(this.world).emitEnergyFrom(this, i);
+    EnergyNet energyNet = EnergyNet.getForWorld(this.world);
+    return this.aggregatesEnergy() ? energyNet.offerAggregatedEnergy(this, i) : energyNet.emitEnergyFrom(this, i);
+  }
+  
+  // Fields of these generators emit their combined output through one of them, see EnergyNet.offerAggregatedEnergy
+  public boolean aggregatesEnergy() {
+    return false;
   }
   
   public boolean isAddedToEnergyNet() {
@@ -155,6 +161,10 @@ public abstract class TileEntityBaseGenerator extends TileEntityMachine implemen
     return this.production;
   }
   
+  public void refundEnergy(int i) {
+    this.storage = (short) (this.storage + i);
+  }
+  
   public abstract String getName();
   
   public void onGuiClosed(EntityHuman entityhuman) {
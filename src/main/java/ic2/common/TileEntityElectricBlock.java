@@ -7,7 +7,7 @@ import ic2.platform.Platform;
 import net.minecraft.server.*;
 
 public abstract class TileEntityElectricBlock extends TileEntityMachine
-    implements IEnergySink, IEnergySource, IHasGui, ISidedInventory, INetworkClientTileEntityEventListener {
+    implements IEnergyDemandNotifier, IEnergyRefundable, IHasGui, ISidedInventory, INetworkClientTileEntityEventListener {
   public static byte redstoneModes = 6;
   public LocaleLanguage translate;
   public int tier;
@@ -137,6 +137,9 @@ public abstract class TileEntityElectricBlock extends TileEntityMachine
       this.update();
     }
     
+    if (this.addedToEnergyNet) { // The net also updates the demand on injects, so a copy of it here would go stale
+      EnergyNet.getForWorld(this.world).onDemandChanged(this);
+    }
   }
   
   public void onCreated() {
@@ -168,6 +171,10 @@ public abstract class TileEntityElectricBlock extends TileEntityMachine
     return this.output;
   }
   
+  public void refundEnergy(int i) {
+    this.energy += i;
+  }
+  
   public boolean demandsEnergy() {
     return this.energy < this.maxStorage;
   }
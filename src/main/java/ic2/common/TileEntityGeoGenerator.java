@@ -60,6 +60,10 @@ public class TileEntityGeoGenerator extends TileEntityBaseGenerator implements I
     return false;
   }
   
+  public void refundEnergy(int i) { // Sends from its own tracker instead of storage
+    this.energy += i;
+  }
+  
   public void q_() {
     boolean update = false;
     update = gainFuel();
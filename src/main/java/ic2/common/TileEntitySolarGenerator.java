@@ -72,6 +72,10 @@ public class TileEntitySolarGenerator extends TileEntityBaseGenerator implements
     return 128;
   }
   
+  public boolean aggregatesEnergy() {
+    return mod_IC2.energyNetAggregateGenerators;
+  }
+  
   public boolean delayActiveUpdate() {
     return true;
   }
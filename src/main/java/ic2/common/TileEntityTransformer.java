@@ -1,15 +1,15 @@
 package ic2.common;
 
 import ic2.api.Direction;
+import ic2.api.IEnergyRefundable;
 import ic2.api.IEnergySink;
-import ic2.api.IEnergySource;
 import ic2.platform.Platform;
 import net.minecraft.server.EntityHuman;
 import net.minecraft.server.NBTTagCompound;
 import net.minecraft.server.TileEntity;
 import net.minecraft.server.mod_IC2;
 
-public abstract class TileEntityTransformer extends TileEntityBlock implements IEnergySink, IEnergySource {
+public abstract class TileEntityTransformer extends TileEntityBlock implements IEnergySink, IEnergyRefundable {
   public int lowOutput;
   public int highOutput;
   public int maxStorage;
@@ -56,23 +56,21 @@ public abstract class TileEntityTransformer extends TileEntityBlock implements I
   public void q_() {
     super.q_();
     this.updateRedstone();
-    int tempEnergy = -1; // Used to prevent infinite loops
-    int loopCount = 0;
     EnergyNet energyNet = EnergyNet.getForWorld(world);
     if (energyNet == null) {
       return;
     }
     if (this.redstone) {
-      while (this.energy >= this.highOutput && tempEnergy != this.energy && loopCount++ < 128) {
-        tempEnergy = this.energy;
-        this.energy -= this.highOutput - energyNet.emitEnergyFrom(this, this.highOutput);
+      int i = Math.min(this.energy / this.highOutput, 128);
+      if (i > 0) {
+        this.energy -= i * this.highOutput - energyNet.emitEnergyFrom(this, this.highOutput, i);
       }
     }
 
     else {
-      while (this.energy >= this.lowOutput && tempEnergy != this.energy && loopCount++ < 512) {
-        tempEnergy = this.energy;
-        this.energy -= this.lowOutput - energyNet.emitEnergyFrom(this, this.lowOutput);
+      int i = Math.min(this.energy / this.lowOutput, 512);
+      if (i > 0) {
+        this.energy -= i * this.lowOutput - energyNet.emitEnergyFrom(this, this.lowOutput, i);
       }
     }
     
@@ -139,6 +137,10 @@ public abstract class TileEntityTransformer extends TileEntityBlock implements I
     return this.redstone ? this.highOutput : this.lowOutput;
   }
   
+  public void refundEnergy(int i) {
+    this.energy += i;
+  }
+  
   public boolean demandsEnergy() {
     return this.energy < this.maxStorage;
   }
@@ -133,6 +133,10 @@ public class TileEntityWindGenerator extends TileEntityBaseGenerator implements
     return "Generators/WindGenLoop.ogg";
   }
   
+  public boolean aggregatesEnergy() {
+    return mod_IC2.energyNetAggregateGenerators;
+  }
+  
   public boolean delayActiveUpdate() {
     return true;
   }
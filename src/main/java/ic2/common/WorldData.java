@@ -0,0 +1,117 @@
+package ic2.common;
+
+import forge.DimensionManager;
+import net.minecraft.server.World;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+// Everything IC2 keeps per world, created when the world loads and released once it is gone again
+public final class WorldData {
+  private static final int releaseCheckInterval = 1200;
+  private static final int releaseDelay = 1200; // World ticks a world has to be idle for before it is released
+  private static final Registry<World> registry = new Registry<>(() -> Arrays.asList(DimensionManager.getWorlds()));
+  public final Map<Long, Set> regionToFieldsToUpdateMap = new HashMap<>(); // Dirty networked fields by region
+  public final List targetedFieldsToUpdate = new ArrayList(); // Fields only one player asked for
+  public int fieldsToUpdate = 0;
+  public int ticksLeftToUpdate = 2;
+  public final Queue singleTickCallbacks = new ArrayDeque();
+  public final Set continuousTickCallbacks = new HashSet();
+  public boolean continuousTickCallbacksInUse = false;
+  public final List continuousTickCallbacksToAdd = new Vector();
+  public final List continuousTickCallbacksToRemove = new Vector();
+  EnergyNet energyNet = null;
+  private long lastTick;
+  
+  private WorldData(long lastTick) {
+    this.lastTick = lastTick;
+  }
+  
+  public static WorldData get(World world) {
+    return registry.get(world);
+  }
+  
+  // Doesn't create the data, for callers that have nothing to do in worlds IC2 never touched
+  public static WorldData peek(World world) {
+    return registry.peek(world);
+  }
+  
+  public static WorldData onTick(World world) {
+    return registry.onTick(world);
+  }
+  
+  // Forge has no unload event, worlds that left DimensionManager and stopped ticking are released
+  public static void releaseUnloaded() {
+    registry.releaseUnloaded();
+  }
+  
+  // Releases the data of all worlds, for tests
+  static void reset() {
+    registry.reset();
+  }
+  
+  private void release() {
+    regionToFieldsToUpdateMap.clear();
+    targetedFieldsToUpdate.clear();
+    singleTickCallbacks.clear();
+    continuousTickCallbacks.clear();
+    continuousTickCallbacksToAdd.clear();
+    continuousTickCallbacksToRemove.clear();
+    energyNet = null;
+  }
+  
+  // Data by world, generic in the key so tests can run it without creating worlds
+  static final class Registry<K> {
+    private final Map<K, WorldData> worldToDataMap = new HashMap<>();
+    private final Supplier<Collection<K>> loadedWorlds;
+    private long worldTicks = 0L; // Ticks of all worlds together
+    
+    Registry(Supplier<Collection<K>> loadedWorlds) {
+      this.loadedWorlds = loadedWorlds;
+    }
+    
+    WorldData get(K world) {
+      WorldData worldData = worldToDataMap.get(world);
+      if (worldData == null) {
+        worldData = new WorldData(worldTicks);
+        worldToDataMap.put(world, worldData);
+      }
+      return worldData;
+    }
+    
+    WorldData peek(K world) {
+      return worldToDataMap.get(world);
+    }
+    
+    WorldData onTick(K world) {
+      WorldData worldData = get(world);
+      worldData.lastTick = ++worldTicks;
+      if (worldTicks % releaseCheckInterval == 0) {
+        releaseUnloaded();
+      }
+      return worldData;
+    }
+    
+    void releaseUnloaded() {
+      Set<K> loaded = Collections.newSetFromMap(new IdentityHashMap<>());
+      loaded.addAll(loadedWorlds.get());
+      Iterator<Map.Entry<K, WorldData>> iterator = worldToDataMap.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<K, WorldData> entry = iterator.next();
+        WorldData worldData = entry.getValue();
+        if (!loaded.contains(entry.getKey()) && worldTicks - worldData.lastTick > releaseDelay) {
+          iterator.remove();
+          worldData.release();
+        }
+      }
+    }
+    
+    void reset() {
+      for (WorldData worldData : worldToDataMap.values()) {
+        worldData.release();
+      }
+      worldToDataMap.clear();
+      worldTicks = 0L;
+    }
+  }
+}
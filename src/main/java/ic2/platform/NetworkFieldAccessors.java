@@ -0,0 +1,59 @@
+package ic2.platform;
+
+import ic2.api.INetworkDataProvider;
+import net.minecraft.server.TileEntity;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+// Getters of networked tile entity fields, resolved once per class from its networked fields so syncing never looks
+// up fields by reflection. Every getter takes the tile entity and returns the value as Object.
+final class NetworkFieldAccessors {
+  private static final MethodType accessorType = MethodType.methodType(Object.class, Object.class);
+  private static final Map<Class<?>, Map<String, MethodHandle>> classToAccessorMap = new HashMap<>();
+  
+  static MethodHandle get(TileEntity tileEntity, String name) {
+    Map<String, MethodHandle> accessors = classToAccessorMap.get(tileEntity.getClass());
+    if (accessors == null) {
+      accessors = new HashMap<>();
+      if (tileEntity instanceof INetworkDataProvider) {
+        for (Object field : ((INetworkDataProvider) tileEntity).getNetworkedFields()) {
+          accessors.put((String) field, resolve(tileEntity.getClass(), (String) field));
+        }
+      }
+      classToAccessorMap.put(tileEntity.getClass(), accessors);
+    }
+    MethodHandle accessor = accessors.get(name);
+    if (accessor == null) { // Updated without being listed as networked field
+      accessor = resolve(tileEntity.getClass(), name);
+      accessors.put(name, accessor);
+    }
+    return accessor;
+  }
+  
+  private static MethodHandle resolve(Class<?> clazz, String name) {
+    for (Class<?> class1 = clazz; class1 != null; class1 = class1.getSuperclass()) {
+      for (Field field : class1.getDeclaredFields()) {
+        if (!field.getName().equals(name)) {
+          continue;
+        }
+        try {
+          field.setAccessible(true);
+          MethodHandle accessor = MethodHandles.lookup().unreflectGetter(field);
+          if (Modifier.isStatic(field.getModifiers())) {
+            accessor = MethodHandles.dropArguments(accessor, 0, Object.class);
+          }
+          return accessor.asType(accessorType);
+        } catch (IllegalAccessException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+    throw new RuntimeException(new NoSuchFieldException(name));
+  }
+}
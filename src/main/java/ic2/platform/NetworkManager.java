@@ -6,46 +6,44 @@ import ic2.api.INetworkClientTileEntityEventListener;
 import ic2.api.INetworkDataProvider;
 import ic2.api.INetworkItemEventListener;
 import ic2.common.DataEncoder;
+import ic2.common.FieldUpdateCodec;
 import ic2.common.IHandHeldInventory;
 import ic2.common.IHasGui;
+import ic2.common.WorldData;
 import net.minecraft.server.*;
 
 import java.io.*;
-import java.lang.reflect.Field;
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.zip.GZIPOutputStream;
 
 public class NetworkManager implements IPacketHandler {
   private static final int updatePeriod = 2;
-  private static final Map fieldsToUpdateSet = new HashMap();
-  private static final Map ticksLeftToUpdate = new HashMap();
+  private static final int regionShift = 6;
+  // By connection, the server replaces the EntityPlayer on respawn and dimension changes but keeps its NetServerHandler
+  private static final Map<NetServerHandler, PlayerInterest> connectionToInterestMap = new WeakHashMap<>();
+  private static final Map<Class, Map<String, Integer>> classToFieldIdMap = new HashMap<>();
+  private static final List<String> fieldNames = new ArrayList<>(); // Field name by id
   
   public static void onTick(World world) {
-    int i;
-    if (!ticksLeftToUpdate.containsKey(world)) {
-      i = 2;
-    }
-    else {
-      i = (Integer) ticksLeftToUpdate.get(world);
-    }
-    
-    --i;
-    if (i == 0) {
+    WorldData worldData = WorldData.get(world);
+    --worldData.ticksLeftToUpdate;
+    if (worldData.ticksLeftToUpdate == 0) {
       sendUpdatePacket(world);
-      i = 2;
+      worldData.ticksLeftToUpdate = 2;
     }
-    
-    ticksLeftToUpdate.put(world, i);
   }
   
   public static void updateTileEntityField(TileEntity tileentity, String s) {
-    if (!fieldsToUpdateSet.containsKey(tileentity.world)) {
-      fieldsToUpdateSet.put(tileentity.world, new HashSet());
+    WorldData worldData = WorldData.get(tileentity.world);
+    long region = regionOf(tileentity.x, tileentity.z);
+    Set set = worldData.regionToFieldsToUpdateMap.get(region);
+    if (set == null) {
+      set = new LinkedHashSet();
+      worldData.regionToFieldsToUpdateMap.put(region, set);
     }
-    
-    Set set = (Set) fieldsToUpdateSet.get(tileentity.world);
-    set.add(new TileEntityField(tileentity, s));
-    if (set.size() > 10000) {
+    if (set.add(new TileEntityField(tileentity, s)) && ++worldData.fieldsToUpdate > 10000) {
       sendUpdatePacket(tileentity.world);
     }
     
@@ -227,92 +225,103 @@ public class NetworkManager implements IPacketHandler {
     }
   }
   
+  // Fields are encoded and compressed once per region, every player gets the shared packets of the regions it
+  // watches. Fields requested by a single player are encoded for that player only. With delta sync, values a player
+  // was already sent are left out; players missing the same values still share a packet.
   private static void sendUpdatePacket(World world) {
-    if (fieldsToUpdateSet.containsKey(world)) {
-      Set set = (Set) fieldsToUpdateSet.get(world);
-      if (!set.isEmpty()) {
-        label92:
-        for (int iter = 0; iter < world.players.size(); ++iter) {
-          EntityPlayer entityplayer = (EntityPlayer) world.players.get(iter);
-  
-          try {
-            ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream();
-            bytearrayoutputstream.write(0);
-            GZIPOutputStream gzipoutputstream = new GZIPOutputStream(bytearrayoutputstream);
-            DataOutputStream dataoutputstream = new DataOutputStream(gzipoutputstream);
-            dataoutputstream.writeInt(world.worldProvider.dimension);
-            Iterator iterator1 = set.iterator();
+    WorldData worldData = WorldData.peek(world);
+    if (worldData == null || worldData.fieldsToUpdate == 0) {
+      return;
+    }
     
-            while (true) {
-              TileEntityField tileentityfield;
-              int i;
-              do {
-                do {
-                  do {
-                    do {
-                      if (!iterator1.hasNext()) {
-                        dataoutputstream.close();
-                        gzipoutputstream.close();
-                        if (bytearrayoutputstream.size() > 1) {
-                          Packet250CustomPayload packet250custompayload = new Packet250CustomPayload();
-                          packet250custompayload.tag = "ic2";
-                          packet250custompayload.lowPriority = true;
-                          packet250custompayload.data = bytearrayoutputstream.toByteArray();
-                          packet250custompayload.length = bytearrayoutputstream.size();
-                          entityplayer.netServerHandler.sendPacket(packet250custompayload);
-                        }
-                        continue label92;
-                      }
-  
-                      tileentityfield = (TileEntityField) iterator1.next();
-                    } while (tileentityfield.te.l());
-                  } while (tileentityfield.te.world != world);
-                } while (tileentityfield.target != null && tileentityfield.target != entityplayer);
-  
-                i = Math.min(Math.abs(tileentityfield.te.x - (int) entityplayer.locX),
-                    Math.abs(tileentityfield.te.z - (int) entityplayer.locZ));
-              } while (i > ModLoader.getMinecraftServerInstance().serverConfigurationManager.a() + 16);
-      
-              dataoutputstream.writeInt(tileentityfield.te.x);
-              dataoutputstream.writeInt(tileentityfield.te.y);
-              dataoutputstream.writeInt(tileentityfield.te.z);
-              dataoutputstream.writeShort(tileentityfield.field.length());
-              dataoutputstream.writeChars(tileentityfield.field);
-              Field field = null;
-      
-              try {
-                Class class1 = tileentityfield.te.getClass();
-        
-                do {
-                  try {
-                    field = class1.getDeclaredField(tileentityfield.field);
-                  } catch (NoSuchFieldException var13) {
-                    class1 = class1.getSuperclass();
-                  }
-                } while (field == null && class1 != null);
-        
-                if (field == null) {
-                  throw new NoSuchFieldException(tileentityfield.field);
-                }
-        
-                field.setAccessible(true);
-                DataEncoder.encode(dataoutputstream, field.get(tileentityfield.te));
-              } catch (Exception var14) {
-                throw new RuntimeException(var14);
-              }
+    try {
+      int i = ModLoader.getMinecraftServerInstance().serverConfigurationManager.a() + 16; // View distance in blocks
+      Map<Long, FieldUpdate> regionToUpdateMap = new HashMap<>();
+      for (int iter = 0; iter < world.players.size(); ++iter) {
+        EntityPlayer entityplayer = (EntityPlayer) world.players.get(iter);
+        PlayerInterest playerInterest = getPlayerInterest(entityplayer, i >> 4);
+        if (playerInterest.regions.length <= worldData.regionToFieldsToUpdateMap.size()) {
+          for (long region : playerInterest.regions) {
+            sendRegionUpdatePacket(world, worldData, region, entityplayer, playerInterest, regionToUpdateMap);
+          }
+        }
+        else { // Less dirty regions in the world than the player watches
+          for (long region : worldData.regionToFieldsToUpdateMap.keySet()) {
+            if (playerInterest.contains(region)) {
+              sendRegionUpdatePacket(world, worldData, region, entityplayer, playerInterest, regionToUpdateMap);
             }
-          } catch (IOException var15) {
-            throw new RuntimeException(var15);
           }
         }
-  
-        set.clear();
+        if (!worldData.targetedFieldsToUpdate.isEmpty()) {
+          new FieldUpdate(world, worldData.targetedFieldsToUpdate, entityplayer, playerInterest)
+              .send(world, entityplayer, playerInterest, true);
+        }
       }
+    } catch (IOException var15) {
+      throw new RuntimeException(var15);
     }
+    
+    worldData.regionToFieldsToUpdateMap.clear();
+    worldData.targetedFieldsToUpdate.clear();
+    worldData.fieldsToUpdate = 0;
+  }
+  
+  private static void sendRegionUpdatePacket(World world, WorldData worldData, long region, EntityPlayer entityplayer,
+                                             PlayerInterest playerInterest,
+                                             Map<Long, FieldUpdate> regionToUpdateMap) throws IOException {
+    Set fields = worldData.regionToFieldsToUpdateMap.get(region);
+    if (fields == null) {
+      return;
+    }
+    FieldUpdate fieldUpdate = regionToUpdateMap.get(region);
+    if (fieldUpdate == null) {
+      fieldUpdate = new FieldUpdate(world, fields, null, null);
+      regionToUpdateMap.put(region, fieldUpdate);
+    }
+    fieldUpdate.send(world, entityplayer, playerInterest, false);
+  }
+  
+  private static long chunkOf(int x, int z) {
+    return (long) x << 32 | (long) z & 0xFFFFFFFFL;
+  }
+  
+  // Region of 4x4 chunks the field is bucketed in
+  private static long regionOf(int x, int z) {
+    return (long) (x >> regionShift) << 32 | (long) (z >> regionShift) & 0xFFFFFFFFL;
+  }
+  
+  private static PlayerInterest getPlayerInterest(NetServerHandler netserverhandler) {
+    PlayerInterest playerInterest = connectionToInterestMap.get(netserverhandler);
+    if (playerInterest == null) {
+      playerInterest = new PlayerInterest();
+      connectionToInterestMap.put(netserverhandler, playerInterest);
+    }
+    return playerInterest;
+  }
+  
+  // Regions overlapping the chunks within view distance of the player, only rebuilt once that set of regions changes
+  private static PlayerInterest getPlayerInterest(EntityPlayer entityplayer, int viewDistance) {
+    PlayerInterest playerInterest = getPlayerInterest(entityplayer.netServerHandler);
+    int x = MathHelper.floor(entityplayer.locX) >> 4;
+    int z = MathHelper.floor(entityplayer.locZ) >> 4;
+    int shift = regionShift - 4;
+    int minX = x - viewDistance >> shift;
+    int minZ = z - viewDistance >> shift;
+    int maxX = x + viewDistance >> shift;
+    int maxZ = z + viewDistance >> shift;
+    if (playerInterest.minX != minX || playerInterest.minZ != minZ || playerInterest.maxX != maxX ||
+        playerInterest.maxZ != maxZ) {
+      playerInterest.update(minX, minZ, maxX, maxZ);
+    }
+    if (mod_IC2.networkDeltaSync) {
+      playerInterest.watch(entityplayer, x, z, viewDistance - 1);
+    }
+    return playerInterest;
   }
   
   public void onPacketData(net.minecraft.server.NetworkManager networkmanager, String s, byte[] abyte0) {
-    EntityPlayer entityplayer = ((NetServerHandler) networkmanager.getNetHandler()).getPlayerEntity();
+    NetServerHandler netserverhandler = (NetServerHandler) networkmanager.getNetHandler();
+    EntityPlayer entityplayer = netserverhandler.getPlayerEntity();
     DataInputStream datainputstream = new DataInputStream(new ByteArrayInputStream(abyte0));
     
     try {
@@ -332,17 +341,13 @@ public class NetworkManager implements IPacketHandler {
             if (i == world.worldProvider.dimension) {
               TileEntity tileentity = world.getTileEntity(i1, l1, k2);
               if (tileentity instanceof INetworkDataProvider) {
-                if (!fieldsToUpdateSet.containsKey(world)) {
-                  fieldsToUpdateSet.put(world, new HashSet());
-                }
-  
-                Set set = (Set) fieldsToUpdateSet.get(world);
+                WorldData worldData = WorldData.get(world);
                 Iterator iterator = ((INetworkDataProvider) tileentity).getNetworkedFields().iterator();
   
                 while (iterator.hasNext()) {
                   String s1 = (String) iterator.next();
-                  set.add(new TileEntityField(tileentity, s1, entityplayer));
-                  if (set.size() > 10000) {
+                  worldData.targetedFieldsToUpdate.add(new TileEntityField(tileentity, s1, entityplayer));
+                  if (++worldData.fieldsToUpdate > 10000) {
                     sendUpdatePacket(world);
                   }
                 }
@@ -392,6 +397,16 @@ public class NetworkManager implements IPacketHandler {
               break;
             }
           }
+          break;
+        case 4: // Client announces the field update formats it can read, see FieldUpdateCodec
+          int i5 = datainputstream.readInt();
+          if (mod_IC2.networkCompactUpdates) {
+            PlayerInterest playerInterest = getPlayerInterest(netserverhandler);
+            playerInterest.updateVersion =
+                i5 >= FieldUpdateCodec.compactVersion ? Math.min(i5, FieldUpdateCodec.version) : 0;
+            playerInterest.knownFieldIds.clear(); // The client starts over with a fresh decoder
+            playerInterest.sentArrays.clear();
+          }
       }
     } catch (IOException var29) {
       var29.printStackTrace();
@@ -399,19 +414,280 @@ public class NetworkManager implements IPacketHandler {
     
   }
   
+  static class PlayerInterest {
+    int minX = Integer.MAX_VALUE; // Region bounds, inclusive
+    int minZ = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int maxZ = Integer.MIN_VALUE;
+    long[] regions = new long[0];
+    final Set<Long> regionSet = new HashSet<>();
+    final Map<Long, Map<TileEntity, Map<String, Long>>> sentValues = new HashMap<>(); // Last value hashes by chunk
+    WeakReference<EntityPlayer> player = new WeakReference<>(null); // Entity the sent values were sent to
+    int chunkX = 0; // Square of chunks the client surely holds, see watch
+    int chunkZ = 0;
+    int chunkRadius = -1;
+    final Set<Long> pendingChunks = new HashSet<>(); // Chunks in the square the server didn't send yet
+    final BitSet knownFieldIds = new BitSet(); // Field ids already defined for the player
+    int updateVersion = 0; // Field update format the client announced, 0 for the legacy one
+    final Map<TileEntity, Map<String, byte[]>> sentArrays = new WeakHashMap<>(); // Last array sent per field
+    
+    void update(int minX, int minZ, int maxX, int maxZ) {
+      this.minX = minX;
+      this.minZ = minZ;
+      this.maxX = maxX;
+      this.maxZ = maxZ;
+      regions = new long[(maxX - minX + 1) * (maxZ - minZ + 1)];
+      regionSet.clear();
+      int n = 0;
+      for (int i = minX; i <= maxX; i++) {
+        for (int j = minZ; j <= maxZ; j++) {
+          regions[n] = (long) i << 32 | (long) j & 0xFFFFFFFFL;
+          regionSet.add(regions[n++]);
+        }
+      }
+    }
+    
+    boolean contains(long region) {
+      return regionSet.contains(region);
+    }
+    
+    // Sent values only count while the client holds the chunk they belong to. Vanilla sends a chunk anew once it enters
+    // the player's view or the player respawns, and moves the watched square only every 8 blocks, so values are kept
+    // for chunks one closer than the view distance that were sent already and forgotten as soon as that changes.
+    void watch(EntityPlayer entityplayer, int chunkX, int chunkZ, int chunkRadius) {
+      if (player.get() != entityplayer) { // Respawned or changed dimension, the client got all chunks anew
+        player = new WeakReference<>(entityplayer);
+        sentValues.clear();
+      }
+      boolean moved = chunkX != this.chunkX || chunkZ != this.chunkZ || chunkRadius != this.chunkRadius;
+      this.chunkX = chunkX;
+      this.chunkZ = chunkZ;
+      this.chunkRadius = chunkRadius;
+      pendingChunks.clear();
+      for (Object obj : entityplayer.chunkCoordIntPairQueue) {
+        ChunkCoordIntPair chunkcoordintpair = (ChunkCoordIntPair) obj;
+        pendingChunks.add(chunkOf(chunkcoordintpair.x, chunkcoordintpair.b() - 8 >> 4));
+      }
+      if (moved || !pendingChunks.isEmpty()) {
+        sentValues.keySet().removeIf(chunk -> !isWatched(chunk));
+      }
+    }
+    
+    private boolean isWatched(long chunk) {
+      return Math.abs((int) (chunk >> 32) - chunkX) <= chunkRadius && Math.abs((int) chunk - chunkZ) <= chunkRadius &&
+          !pendingChunks.contains(chunk);
+    }
+    
+    // Records the value as sent, returns whether the player didn't have it yet
+    boolean markSent(TileEntityField tileentityfield, long hash) {
+      long chunk = chunkOf(tileentityfield.te.x >> 4, tileentityfield.te.z >> 4);
+      if (!isWatched(chunk)) {
+        return true;
+      }
+      Map<TileEntity, Map<String, Long>> tileEntityToFieldMap = sentValues.get(chunk);
+      if (tileEntityToFieldMap == null) {
+        tileEntityToFieldMap = new WeakHashMap<>();
+        sentValues.put(chunk, tileEntityToFieldMap);
+      }
+      Map<String, Long> fieldToHashMap = tileEntityToFieldMap.get(tileentityfield.te);
+      if (fieldToHashMap == null) {
+        fieldToHashMap = new HashMap<>();
+        tileEntityToFieldMap.put(tileentityfield.te, fieldToHashMap);
+      }
+      Long last = fieldToHashMap.put(tileentityfield.field, hash);
+      return last == null || last != hash;
+    }
+    
+    // Records the encoded array as sent, returns the one sent before that the client's decoder still has
+    byte[] putSentArray(TileEntityField tileentityfield, byte[] data) {
+      Map<String, byte[]> fieldToArrayMap = sentArrays.get(tileentityfield.te);
+      if (fieldToArrayMap == null) {
+        fieldToArrayMap = new HashMap<>();
+        sentArrays.put(tileentityfield.te, fieldToArrayMap);
+      }
+      return fieldToArrayMap.put(tileentityfield.field, data);
+    }
+  }
+  
+  // Id of the (tile entity class, field) pair, shared by all players. The names are sent to each player once.
+  private static int getFieldId(TileEntityField tileentityfield) {
+    Map<String, Integer> fieldToIdMap = classToFieldIdMap.get(tileentityfield.te.getClass());
+    if (fieldToIdMap == null) {
+      fieldToIdMap = new HashMap<>();
+      classToFieldIdMap.put(tileentityfield.te.getClass(), fieldToIdMap);
+    }
+    Integer id = fieldToIdMap.get(tileentityfield.field);
+    if (id == null) {
+      id = fieldNames.size();
+      fieldNames.add(tileentityfield.field);
+      fieldToIdMap.put(tileentityfield.field, id);
+    }
+    return id;
+  }
+  
+  // Encoded fields of one flush, each compressed packet is built for the subset of fields a player is missing
+  static class FieldUpdate {
+    final List<TileEntityField> fields = new ArrayList<>();
+    final List<byte[]> data = new ArrayList<>(); // Encoded values
+    final List<Long> hashes = new ArrayList<>();
+    final int[] fieldIds;
+    final Map<BitSet, Packet250CustomPayload> subsetToPacketMap = new HashMap<>();
+    final Map<BitSet, Packet250CustomPayload> subsetToCompactPacketMap = new HashMap<>();
+    final Map<List<Long>, Packet250CustomPayload> diffToPacketMap = new HashMap<>(); // By field and diff base hash
+    
+    // Fields meant for other players or outside of the regions the target watches are skipped if a target is given
+    FieldUpdate(World world, Collection fields, EntityPlayer target, PlayerInterest targetInterest) throws IOException {
+      for (Object obj : fields) {
+        TileEntityField tileentityfield = (TileEntityField) obj;
+        if (tileentityfield.te.l() || tileentityfield.te.world != world) {
+          continue;
+        }
+        if (target != null && (tileentityfield.target != target ||
+            !targetInterest.contains(regionOf(tileentityfield.te.x, tileentityfield.te.z)))) {
+          continue;
+        }
+        ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream();
+        DataOutputStream dataoutputstream = new DataOutputStream(bytearrayoutputstream);
+        
+        try {
+          Object value = (Object) tileentityfield.accessor.invokeExact((Object) tileentityfield.te);
+          DataEncoder.encode(dataoutputstream, value);
+        } catch (IOException var13) {
+          throw var13;
+        } catch (Throwable var14) {
+          throw new RuntimeException(var14);
+        }
+        byte[] abyte = bytearrayoutputstream.toByteArray();
+        this.fields.add(tileentityfield);
+        this.data.add(abyte);
+        this.hashes.add(hash(abyte));
+      }
+      this.fieldIds = new int[this.fields.size()];
+      for (int k = 0; k < this.fieldIds.length; k++) {
+        this.fieldIds[k] = getFieldId(this.fields.get(k));
+      }
+    }
+    
+    // Forced fields are sent even if unchanged
+    void send(World world, EntityPlayer entityplayer, PlayerInterest playerInterest, boolean force)
+        throws IOException {
+      BitSet subset = new BitSet(fields.size());
+      for (int k = 0; k < fields.size(); k++) {
+        boolean changed = !mod_IC2.networkDeltaSync || playerInterest.markSent(fields.get(k), hashes.get(k));
+        if (changed || force) {
+          subset.set(k);
+        }
+      }
+      if (subset.isEmpty()) {
+        return;
+      }
+      boolean compact = playerInterest.updateVersion >= FieldUpdateCodec.compactVersion;
+      Packet250CustomPayload packet250custompayload;
+      if (mod_IC2.networkDeltaSync && playerInterest.updateVersion >= FieldUpdateCodec.diffVersion) {
+        packet250custompayload = getDiffPacket(world, playerInterest, subset);
+      }
+      else {
+        Map<BitSet, Packet250CustomPayload> map = compact ? subsetToCompactPacketMap : subsetToPacketMap;
+        packet250custompayload = map.get(subset);
+        if (packet250custompayload == null) {
+          packet250custompayload = createUpdatePacket(world, subset, compact, null);
+          map.put(subset, packet250custompayload);
+        }
+      }
+      if (compact) {
+        sendFieldNames(entityplayer, playerInterest, subset);
+      }
+      entityplayer.netServerHandler.sendPacket(packet250custompayload);
+    }
+    
+    // Arrays the player was sent before go as element diffs against that value. Players that were sent the same
+    // previous values share the packet.
+    private Packet250CustomPayload getDiffPacket(World world, PlayerInterest playerInterest, BitSet subset)
+        throws IOException {
+      byte[][] diffs = new byte[fields.size()][];
+      List<Long> key = new ArrayList<>();
+      for (int k = subset.nextSetBit(0); k >= 0; k = subset.nextSetBit(k + 1)) {
+        byte[] abyte = data.get(k);
+        byte[] base = FieldUpdateCodec.isArray(abyte) ? playerInterest.putSentArray(fields.get(k), abyte) : null;
+        diffs[k] = base == null ? null : FieldUpdateCodec.encodeDiff(base, abyte);
+        key.add((long) k);
+        key.add(diffs[k] == null ? 0L : hash(base));
+      }
+      Packet250CustomPayload packet250custompayload = diffToPacketMap.get(key);
+      if (packet250custompayload == null) {
+        packet250custompayload = createUpdatePacket(world, subset, true, diffs);
+        diffToPacketMap.put(key, packet250custompayload);
+      }
+      return packet250custompayload;
+    }
+    
+    private static long hash(byte[] abyte) {
+      long hash = 0xcbf29ce484222325L; // FNV-1a
+      for (byte b : abyte) {
+        hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+      }
+      return hash;
+    }
+    
+    // Defines the field ids the player hasn't seen yet, sent ahead of the update on the same queue
+    private void sendFieldNames(EntityPlayer entityplayer, PlayerInterest playerInterest, BitSet subset)
+        throws IOException {
+      BitSet unknownFieldIds = new BitSet();
+      for (int k = subset.nextSetBit(0); k >= 0; k = subset.nextSetBit(k + 1)) {
+        if (!playerInterest.knownFieldIds.get(fieldIds[k])) {
+          unknownFieldIds.set(fieldIds[k]);
+        }
+      }
+      if (unknownFieldIds.isEmpty()) {
+        return;
+      }
+      playerInterest.knownFieldIds.or(unknownFieldIds);
+      Packet250CustomPayload packet250custompayload = new Packet250CustomPayload();
+      packet250custompayload.tag = "ic2";
+      packet250custompayload.lowPriority = true;
+      packet250custompayload.data = FieldUpdateCodec.encodeFieldNames(unknownFieldIds, fieldNames);
+      packet250custompayload.length = packet250custompayload.data.length;
+      entityplayer.netServerHandler.sendPacket(packet250custompayload);
+    }
+    
+    private Packet250CustomPayload createUpdatePacket(World world, BitSet subset, boolean compact, byte[][] diffs)
+        throws IOException {
+      ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream();
+      bytearrayoutputstream.write(compact ? 5 : 0);
+      GZIPOutputStream gzipoutputstream = new GZIPOutputStream(bytearrayoutputstream);
+      DataOutputStream dataoutputstream = new DataOutputStream(gzipoutputstream);
+      FieldUpdateCodec.Encoder encoder =
+          new FieldUpdateCodec.Encoder(dataoutputstream, world.worldProvider.dimension, compact);
+      for (int k = subset.nextSetBit(0); k >= 0; k = subset.nextSetBit(k + 1)) {
+        TileEntityField tileentityfield = fields.get(k);
+        encoder.writeField(tileentityfield.te.x, tileentityfield.te.y, tileentityfield.te.z, tileentityfield.field,
+            fieldIds[k], diffs != null && diffs[k] != null ? diffs[k] : data.get(k));
+      }
+      dataoutputstream.close();
+      gzipoutputstream.close();
+      Packet250CustomPayload packet250custompayload = new Packet250CustomPayload();
+      packet250custompayload.tag = "ic2";
+      packet250custompayload.lowPriority = true;
+      packet250custompayload.data = bytearrayoutputstream.toByteArray();
+      packet250custompayload.length = bytearrayoutputstream.size();
+      return packet250custompayload;
+    }
+  }
+  
   static class TileEntityField {
     TileEntity te;
     String field;
+    MethodHandle accessor;
     EntityPlayer target = null;
     
     TileEntityField(TileEntity tileentity, String s) {
       this.te = tileentity;
       this.field = s;
+      this.accessor = NetworkFieldAccessors.get(tileentity, s);
     }
     
     TileEntityField(TileEntity tileentity, String s, EntityPlayer entityplayer) {
-      this.te = tileentity;
-      this.field = s;
+      this(tileentity, s);
       this.target = entityplayer;
     }
     
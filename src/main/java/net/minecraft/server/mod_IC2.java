@@ -57,6 +57,16 @@ public class mod_IC2 extends Ic2 implements IConnectionHandler, IOreHandler, ITi
   public static int energyGeneratorSolar = 100;
   public static int energyGeneratorWind = 100;
   public static int energyGeneratorNuclear = 10;
+  public static boolean energyNetBatchedDistribution = false;
+  public static boolean energyNetFlowSolver = false;
+  public static boolean energyNetAsyncDiscovery = false;
+  public static int energyNetDiscoveryThreads = 2;
+  public static boolean energyNetPersistPaths = false;
+  public static int energyNetPartitionThreads = 0;
+  public static int energyNetMaxSourcePaths = 0;
+  public static boolean energyNetAggregateGenerators = false;
+  public static boolean networkDeltaSync = false;
+  public static boolean networkCompactUpdates = false;
   public static boolean suddenlyHoes = false;
   public static boolean initialized = false;
   public static boolean portEnableCraftingQuantum = true;
@@ -87,11 +97,7 @@ public class mod_IC2 extends Ic2 implements IConnectionHandler, IOreHandler, ITi
   private static mod_IC2 instance = null;
   private static boolean silverDustSmeltingRegistered = false;
   private static final Properties runtimeIdProperties = new Properties();
-  private static final Map singleTickCallbacks = new HashMap();
-  private static final Map continuousTickCallbacks = new HashMap();
-  private static final Map continuousTickCallbacksInUse = new HashMap();
-  private static final Map continuousTickCallbacksToAdd = new HashMap();
-  private static final Map continuousTickCallbacksToRemove = new HashMap();
+  private static final Queue singleTickCallbacks = new ArrayDeque(); // Run in whichever world ticks next
   
   static {
     addValuableOre(Block.COAL_ORE.id, 1);
@@ -916,51 +922,39 @@ public class mod_IC2 extends Ic2 implements IConnectionHandler, IOreHandler, ITi
   }
   
   public static void addSingleTickCallback(World world, ITickCallback itickcallback) {
-    if (!singleTickCallbacks.containsKey(world)) {
-      singleTickCallbacks.put(world, new ArrayDeque());
+    if (world == null) {
+      singleTickCallbacks.add(itickcallback);
+    }
+    else {
+      WorldData.get(world).singleTickCallbacks.add(itickcallback);
     }
-    
-    ((Queue) singleTickCallbacks.get(world)).add(itickcallback);
   }
   
   public static void addContinuousTickCallback(World world, ITickCallback itickcallback) {
     if (world != null) {
-      if (continuousTickCallbacksInUse.containsKey(world) && (Boolean) continuousTickCallbacksInUse.get(world)) {
-        if (continuousTickCallbacksToRemove.containsKey(world)) {
-          ((List) continuousTickCallbacksToRemove.get(world)).remove(itickcallback);
-        }
-  
-        if (!continuousTickCallbacksToAdd.containsKey(world)) {
-          continuousTickCallbacksToAdd.put(world, new Vector());
-        }
-  
-        ((List) continuousTickCallbacksToAdd.get(world)).add(itickcallback);
+      WorldData worldData = WorldData.get(world);
+      if (worldData.continuousTickCallbacksInUse) {
+        worldData.continuousTickCallbacksToRemove.remove(itickcallback);
+        worldData.continuousTickCallbacksToAdd.add(itickcallback);
       }
       else {
-        if (!continuousTickCallbacks.containsKey(world)) {
-          continuousTickCallbacks.put(world, new HashSet());
-        }
-  
-        ((Set) continuousTickCallbacks.get(world)).add(itickcallback);
+        worldData.continuousTickCallbacks.add(itickcallback);
       }
   
     }
   }
   
   public static void removeContinuousTickCallback(World world, ITickCallback itickcallback) {
-    if (continuousTickCallbacksInUse.containsKey(world) && (Boolean) continuousTickCallbacksInUse.get(world)) {
-      if (continuousTickCallbacksToAdd.containsKey(world)) {
-        ((List) continuousTickCallbacksToAdd.get(world)).remove(itickcallback);
-      }
-  
-      if (!continuousTickCallbacksToRemove.containsKey(world)) {
-        continuousTickCallbacksToRemove.put(world, new Vector());
-      }
-  
-      ((List) continuousTickCallbacksToRemove.get(world)).add(itickcallback);
+    WorldData worldData = WorldData.peek(world);
+    if (worldData == null) {
+      return;
     }
-    else if (continuousTickCallbacks.containsKey(world)) {
-      ((Set) continuousTickCallbacks.get(world)).remove(itickcallback);
+    if (worldData.continuousTickCallbacksInUse) {
+      worldData.continuousTickCallbacksToAdd.remove(itickcallback);
+      worldData.continuousTickCallbacksToRemove.add(itickcallback);
+    }
+    else {
+      worldData.continuousTickCallbacks.remove(itickcallback);
     }
     
   }
@@ -1270,6 +1264,47 @@ public class mod_IC2 extends Ic2 implements IConnectionHandler, IOreHandler, ITi
           .parseInt(configuration.getOrCreateIntProperty("energyGeneratorWind", "general", energyGeneratorWind).value);
       energyGeneratorNuclear = Integer.parseInt(
           configuration.getOrCreateIntProperty("energyGeneratorNuclear", "general", energyGeneratorNuclear).value);
+      property = configuration
+          .getOrCreateBooleanProperty("energyNetBatchedDistribution", "general", energyNetBatchedDistribution);
+      property.comment = "Collect the energy emitted during a tick and distribute it once per network at the tick end";
+      energyNetBatchedDistribution = Boolean.parseBoolean(property.value);
+      property = configuration.getOrCreateBooleanProperty("energyNetFlowSolver", "general", energyNetFlowSolver);
+      property.comment = "Match the energy offered during a tick against the demand of each network as a whole, " +
+          "implies energyNetBatchedDistribution";
+      energyNetFlowSolver = Boolean.parseBoolean(property.value);
+      property = configuration.getOrCreateBooleanProperty("energyNetAsyncDiscovery", "general", energyNetAsyncDiscovery);
+      property.comment = "Compute energy paths on background threads, sources keep their previous paths until done";
+      energyNetAsyncDiscovery = Boolean.parseBoolean(property.value);
+      property = configuration
+          .getOrCreateIntProperty("energyNetDiscoveryThreads", "general", energyNetDiscoveryThreads);
+      property.comment = "Number of background threads used by energyNetAsyncDiscovery";
+      energyNetDiscoveryThreads = Integer.parseInt(property.value);
+      property = configuration.getOrCreateBooleanProperty("energyNetPersistPaths", "general", energyNetPersistPaths);
+      property.comment = "Save energy paths next to ic2_map.cfg and reuse them after a restart if the networks are unchanged";
+      energyNetPersistPaths = Boolean.parseBoolean(property.value);
+      property = configuration
+          .getOrCreateIntProperty("energyNetPartitionThreads", "general", energyNetPartitionThreads);
+      property.comment = "Threads planning the flow solver allocation of separate networks in parallel, 0 plans them " +
+          "on the main thread. Needs energyNetFlowSolver, injecting into sinks always stays on the main thread";
+      energyNetPartitionThreads = Integer.parseInt(property.value);
+      property = configuration.getOrCreateIntProperty("energyNetMaxSourcePaths", "general", energyNetMaxSourcePaths);
+      property.comment = "Sinks a source keeps paths to, lowest loss first, others are picked up once these are full. " +
+          "0 keeps all of them";
+      energyNetMaxSourcePaths = Integer.parseInt(property.value);
+      property = configuration
+          .getOrCreateBooleanProperty("energyNetAggregateGenerators", "general", energyNetAggregateGenerators);
+      property.comment = "Let adjacent solar panels and windmills emit their combined output at the tick end in 32 EU " +
+          "packets, which also lose less to cables than the small packets of single blocks";
+      energyNetAggregateGenerators = Boolean.parseBoolean(property.value);
+      property = configuration.getOrCreateBooleanProperty("networkDeltaSync", "general", networkDeltaSync);
+      property.comment =
+          "Only send tile entity fields to a player if their value changed since it was last sent to that player. " +
+              "With networkCompactUpdates, changed arrays only carry their changed elements to clients that read them";
+      networkDeltaSync = Boolean.parseBoolean(property.value);
+      property = configuration.getOrCreateBooleanProperty("networkCompactUpdates", "general", networkCompactUpdates);
+      property.comment = "Send tile entity fields in the compact format to clients that announce they can read it. " +
+          "Clients decode it with ic2.common.FieldUpdateCodec, others keep getting the old format";
+      networkCompactUpdates = Boolean.parseBoolean(property.value);
       property = configuration.getOrCreateProperty("valuableOres", "general", getValuableOreString());
       property.comment =
           "List of valuable ores the miner should look for. Comma separated, format is id-metadata:value where value should be at least 1 to be considered by the miner";
@@ -1870,6 +1905,7 @@ public class mod_IC2 extends Ic2 implements IConnectionHandler, IOreHandler, ITi
   
       ModLoader.setInGameHook(this, true, true);
       MinecraftForge.registerConnectionHandler(this);
+      MinecraftForge.registerSaveHandler(new EnergyNetSaveHandler());
       MinecraftForge.registerEntity(EntityMiningLaser.class, this, 0, 160, 40, false);
       MinecraftForge.registerEntity(EntityDynamite.class, this, 1, 160, 5, true);
       MinecraftForge.registerEntity(EntityStickyDynamite.class, this, 2, 160, 5, true);
@@ -2104,12 +2140,7 @@ public class mod_IC2 extends Ic2 implements IConnectionHandler, IOreHandler, ITi
       }
   
       Platform.profilerStartSection("Init");
-      if (!singleTickCallbacks.containsKey(world)) {
-        singleTickCallbacks.put(world, new ArrayDeque());
-        continuousTickCallbacks.put(world, new HashSet());
-        continuousTickCallbacksInUse.put(world, false);
-        continuousTickCallbacksToRemove.put(world, new Vector());
-      }
+      WorldData worldData = WorldData.onTick(world);
   
       Platform.profilerEndStartSection("PlayerUpdate");
       Iterator iterator = world.players.iterator();
@@ -2159,83 +2190,54 @@ public class mod_IC2 extends Ic2 implements IConnectionHandler, IOreHandler, ITi
       Platform.profilerEndStartSection("SingleTickCallback");
       Queue queue1;
       ITickCallback itickcallback1;
-      if (singleTickCallbacks.containsKey(world)) {
-        queue1 = (Queue) singleTickCallbacks.get(world);
+      queue1 = worldData.singleTickCallbacks;
   
-        while ((itickcallback1 = (ITickCallback) queue1.poll()) != null) {
-          Platform.profilerStartSection(itickcallback1.getClass().getName());
-          itickcallback1.tickCallback(world);
-          Platform.profilerEndSection();
-        }
+      while ((itickcallback1 = (ITickCallback) queue1.poll()) != null) {
+        Platform.profilerStartSection(itickcallback1.getClass().getName());
+        itickcallback1.tickCallback(world);
+        Platform.profilerEndSection();
       }
   
-      if (singleTickCallbacks.containsKey(null)) {
-        queue1 = (Queue) singleTickCallbacks.get(null);
-    
-        while ((itickcallback1 = (ITickCallback) queue1.poll()) != null) {
-          Platform.profilerStartSection(itickcallback1.getClass().getName());
-          itickcallback1.tickCallback(world);
-          Platform.profilerEndSection();
-        }
+      queue1 = singleTickCallbacks;
+  
+      while ((itickcallback1 = (ITickCallback) queue1.poll()) != null) {
+        Platform.profilerStartSection(itickcallback1.getClass().getName());
+        itickcallback1.tickCallback(world);
+        Platform.profilerEndSection();
       }
   
       Platform.profilerEndStartSection("ContTickCallback");
-      if (continuousTickCallbacks.containsKey(world)) {
-        Set set = (Set) continuousTickCallbacks.get(world);
-        continuousTickCallbacksInUse.put(world, true);
-        Iterator iterator1 = set.iterator();
-  
-        while (iterator1.hasNext()) {
-          ITickCallback itickcallback2 = (ITickCallback) iterator1.next();
-          Platform.profilerStartSection(itickcallback2.getClass().getName());
-          itickcallback2.tickCallback(world);
-          Platform.profilerEndSection();
-        }
-  
-        continuousTickCallbacksInUse.put(world, false);
-        if (continuousTickCallbacksToAdd.containsKey(world)) {
-          set.addAll((Collection) continuousTickCallbacksToAdd.get(world));
-          ((List) continuousTickCallbacksToAdd.get(world)).clear();
-        }
+      Set set = worldData.continuousTickCallbacks;
+      worldData.continuousTickCallbacksInUse = true;
+      Iterator iterator1 = set.iterator();
   
-        if (continuousTickCallbacksToRemove.containsKey(world)) {
-          set.removeAll((Collection) continuousTickCallbacksToRemove.get(world));
-          ((List) continuousTickCallbacksToRemove.get(world)).clear();
-        }
+      while (iterator1.hasNext()) {
+        ITickCallback itickcallback2 = (ITickCallback) iterator1.next();
+        Platform.profilerStartSection(itickcallback2.getClass().getName());
+        itickcallback2.tickCallback(world);
+        Platform.profilerEndSection();
       }
   
+      worldData.continuousTickCallbacksInUse = false;
+      set.addAll(worldData.continuousTickCallbacksToAdd);
+      worldData.continuousTickCallbacksToAdd.clear();
+      set.removeAll(worldData.continuousTickCallbacksToRemove);
+      worldData.continuousTickCallbacksToRemove.clear();
+  
       Platform.profilerEndSection();
     }
     
     if (enumset.contains(TickType.WORLDLOAD)) {
       if (Platform.isSimulating()) {
+        WorldData.releaseUnloaded();
         Integer[] ainteger = DimensionManager.getIDs();
         int i = ainteger.length;
   
         for (int j = 0; j < i; ++j) {
           int k = ainteger[j];
           World world1 = DimensionManager.getProvider(k).a;
-          if (world1 != null && world1.getDataManager() instanceof WorldNBTStorage) {
-            WorldNBTStorage worldnbtstorage = (WorldNBTStorage) world1.getDataManager();
-            File file = null;
-            Field[] afield = WorldNBTStorage.class.getDeclaredFields();
-            int i1 = afield.length;
-  
-            for (int j1 = 0; j1 < i1; ++j1) {
-              Field field = afield[j1];
-              if (field.getType() == File.class) {
-                field.setAccessible(true);
-  
-                try {
-                  File file2 = (File) field.get(worldnbtstorage);
-                  if (file == null || file.getParentFile() == file2) {
-                    file = file2;
-                  }
-                } catch (Exception var24) {
-                }
-              }
-            }
-  
+          if (world1 != null) {
+            File file = getWorldDirectory(world1);
             if (file != null) {
               try {
                 Properties properties = new Properties() {
@@ -2308,7 +2310,41 @@ public class mod_IC2 extends Ic2 implements IConnectionHandler, IOreHandler, ITi
     
   }
   
+  // Save directory of the world, the one holding ic2_map.cfg
+  public static File getWorldDirectory(World world) {
+    if (!(world.getDataManager() instanceof WorldNBTStorage)) {
+      return null;
+    }
+    WorldNBTStorage worldnbtstorage = (WorldNBTStorage) world.getDataManager();
+    File file = null;
+    Field[] afield = WorldNBTStorage.class.getDeclaredFields();
+    int i = afield.length;
+    
+    for (int j = 0; j < i; ++j) {
+      Field field = afield[j];
+      if (field.getType() == File.class) {
+        field.setAccessible(true);
+        
+        try {
+          File file1 = (File) field.get(worldnbtstorage);
+          if (file == null || file.getParentFile() == file1) {
+            file = file1;
+          }
+        } catch (Exception var8) {
+        }
+      }
+    }
+    
+    return file;
+  }
+  
   public void tickEnd(EnumSet enumset, Object[] aobj) {
+    if (enumset.contains(TickType.WORLD) && Platform.isSimulating()) {
+      World world = (World) aobj[Platform.isRendering() ? 2 : 0];
+      Platform.profilerStartSection("EnergyNet");
+      EnergyNet.onTickEnd(world);
+      Platform.profilerEndSection();
+    }
   }
   
   public EnumSet ticks() {
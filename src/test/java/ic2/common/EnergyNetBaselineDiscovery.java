@@ -0,0 +1,141 @@
+package ic2.common;
+
+import ic2.api.*;
+import net.minecraft.server.TileEntity;
+
+import java.util.*;
+
+// EnergyNet.discover as of the baseline commit, kept for benchmarks only: a LinkedList work queue and a HashMap of
+// EnergyBlockLinks per search. Neighbours come from a position map instead of World.getTileEntity, so the numbers leave
+// out the chunk lookups the old code paid on top.
+final class EnergyNetBaselineDiscovery {
+  private final Map<Long, TileEntity> positionToTileEntityMap = new HashMap<>();
+
+  void add(TileEntity tileEntity) {
+    positionToTileEntityMap.put(EnergyNetGraph.pack(tileEntity), tileEntity);
+  }
+
+  List<Path> discover(TileEntity tileEntity, boolean flag, int i) {
+    HashMap<TileEntity, EnergyBlockLink> tileEntityEnergyBlockLinkHashMap = new HashMap<>();
+    LinkedList<TileEntity> tileEntityLinkedList = new LinkedList<>();
+    tileEntityLinkedList.add(tileEntity);
+
+    while (!tileEntityLinkedList.isEmpty()) {
+      TileEntity tileEntity1 = tileEntityLinkedList.remove();
+      if (tileEntity1.l()) {
+        continue;
+      }
+      double energyBlockLinkLoss = 0.0D;
+      if (tileEntity1 != tileEntity) {
+        energyBlockLinkLoss = tileEntityEnergyBlockLinkHashMap.get(tileEntity1).loss;
+      }
+
+      for (EnergyTarget energyTarget : getValidReceivers(tileEntity1, flag)) {
+        if (energyTarget.tileEntity == tileEntity) {
+          continue;
+        }
+        double energyConductorConductionLoss = 0.0D;
+        if (energyTarget.tileEntity instanceof IEnergyConductor) {
+          energyConductorConductionLoss = ((IEnergyConductor) energyTarget.tileEntity).getConductionLoss();
+          energyConductorConductionLoss = Math.max(energyConductorConductionLoss, 1.0E-4D);
+          if (energyBlockLinkLoss + energyConductorConductionLoss >= i) {
+            continue;
+          }
+        }
+        if (tileEntityEnergyBlockLinkHashMap.containsKey(energyTarget.tileEntity) &&
+            tileEntityEnergyBlockLinkHashMap.get(energyTarget.tileEntity).loss <=
+                energyBlockLinkLoss + energyConductorConductionLoss) {
+          continue;
+        }
+        tileEntityEnergyBlockLinkHashMap.put(energyTarget.tileEntity,
+            new EnergyBlockLink(energyTarget.direction, energyBlockLinkLoss + energyConductorConductionLoss));
+        if (energyTarget.tileEntity instanceof IEnergyConductor) {
+          tileEntityLinkedList.remove(energyTarget.tileEntity);
+          tileEntityLinkedList.add(energyTarget.tileEntity);
+        }
+      }
+    }
+
+    LinkedList<Path> energyPaths = new LinkedList<>();
+    for (Map.Entry<TileEntity, EnergyBlockLink> entry : tileEntityEnergyBlockLinkHashMap.entrySet()) {
+      TileEntity energyPathTarget = entry.getKey();
+      if (flag ? !(energyPathTarget instanceof IEnergySource) : !(energyPathTarget instanceof IEnergySink)) {
+        continue;
+      }
+      EnergyBlockLink energyBlockLink = entry.getValue();
+      Path energyPath = new Path();
+      energyPath.loss = Math.max(energyBlockLink.loss, 0.1D);
+      energyPath.target = energyPathTarget;
+      if (!flag && tileEntity instanceof IEnergySource) {
+        while (true) {
+          energyPathTarget = neighbour(energyPathTarget, energyBlockLink.direction);
+          if (energyPathTarget == tileEntity) {
+            break;
+          }
+          IEnergyConductor iEnergyConductor = (IEnergyConductor) energyPathTarget;
+          energyPath.conductors.add(iEnergyConductor);
+          energyPath.minConductorBreakdownEnergy = Math.min(iEnergyConductor.getConductorBreakdownEnergy(),
+              energyPath.minConductorBreakdownEnergy);
+          energyBlockLink = tileEntityEnergyBlockLinkHashMap.get(energyPathTarget);
+        }
+      }
+      energyPaths.add(energyPath);
+    }
+    return energyPaths;
+  }
+
+  private LinkedList<EnergyTarget> getValidReceivers(TileEntity tileentity, boolean flag) {
+    LinkedList<EnergyTarget> linkedlist = new LinkedList<>();
+    for (Direction direction : Direction.values()) {
+      TileEntity tileentity1 = neighbour(tileentity, direction);
+      if (tileentity1 instanceof IEnergyTile && ((IEnergyTile) tileentity1).isAddedToEnergyNet()) {
+        Direction direction1 = direction.getInverse();
+        if ((!flag && tileentity instanceof IEnergyEmitter &&
+            ((IEnergyEmitter) tileentity).emitsEnergyTo(tileentity1, direction) ||
+            flag && tileentity instanceof IEnergyAcceptor &&
+                ((IEnergyAcceptor) tileentity).acceptsEnergyFrom(tileentity1, direction)) &&
+            (!flag && tileentity1 instanceof IEnergyAcceptor &&
+                ((IEnergyAcceptor) tileentity1).acceptsEnergyFrom(tileentity, direction1) ||
+                flag && tileentity1 instanceof IEnergyEmitter &&
+                    ((IEnergyEmitter) tileentity1).emitsEnergyTo(tileentity, direction1))) {
+          linkedlist.add(new EnergyTarget(tileentity1, direction1));
+        }
+      }
+    }
+    return linkedlist;
+  }
+
+  // Direction.applyToTileEntity against the position map
+  private TileEntity neighbour(TileEntity tileEntity, Direction direction) {
+    int[] ai = new int[]{tileEntity.x, tileEntity.y, tileEntity.z};
+    ai[direction.ordinal() / 2] += direction.ordinal() % 2 * 2 - 1;
+    return positionToTileEntityMap.get(EnergyNetGraph.pack(ai[0], ai[1], ai[2]));
+  }
+
+  static class Path {
+    TileEntity target;
+    double loss;
+    Set<IEnergyConductor> conductors = new HashSet<>();
+    int minConductorBreakdownEnergy = Integer.MAX_VALUE;
+  }
+
+  private static class EnergyTarget {
+    final TileEntity tileEntity;
+    final Direction direction;
+
+    EnergyTarget(TileEntity tileEntity, Direction direction) {
+      this.tileEntity = tileEntity;
+      this.direction = direction;
+    }
+  }
+
+  private static class EnergyBlockLink {
+    final Direction direction;
+    final double loss;
+
+    EnergyBlockLink(Direction direction, double loss) {
+      this.direction = direction;
+      this.loss = loss;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package ic2.common;
+
+import ic2.common.EnergyNetTestTiles.Cable;
+import ic2.common.EnergyNetTestTiles.Sink;
+import ic2.common.EnergyNetTestTiles.Source;
+import net.minecraft.server.TileEntity;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static ic2.common.EnergyNetTestTiles.at;
+import static org.junit.jupiter.api.Assertions.*;
+
+// Timings and allocations against the code the backlog replaced, run with gradle benchmark. Numbers are per operation on the machine
+// running them, only meant for comparing the old and the new code side by side.
+@Tag("benchmark")
+class EnergyNetBenchmark {
+  // A source in the middle of a square cable plane of about the given node count, sinks along the edge
+  @Test
+  void discovery() {
+    System.out.println(String.format("%-12s %7s %6s %16s %16s %16s %16s", "Discovery", "nodes", "paths",
+        "baseline us/op", "new us/op", "baseline B/op", "new B/op"));
+    for (int nodes : new int[]{1000, 10000, 100000}) {
+      int size = (int) Math.round(Math.sqrt(nodes));
+      EnergyNetGraph graph = new EnergyNetGraph(chain -> {
+      });
+      EnergyNetBaselineDiscovery baseline = new EnergyNetBaselineDiscovery();
+      Source source = at(new Source(), size / 2, 64, size / 2);
+      for (int x = 0; x < size; x++) {
+        for (int z = 0; z < size; z++) {
+          TileEntity tileEntity;
+          if (x == size / 2 && z == size / 2) {
+            tileEntity = source;
+          }
+          else if (x == 0 || z == 0 || x == size - 1 || z == size - 1) {
+            tileEntity = at(new Sink(), x, 64, z);
+          }
+          else {
+            tileEntity = at(new Cable(), x, 64, z);
+          }
+          graph.add(tileEntity);
+          baseline.add(tileEntity);
+        }
+      }
+      EnergyNetDiscovery discovery = new EnergyNetDiscovery();
+      EnergyNetGraph.Node start = graph.getNode(source);
+      int paths = discovery.discover(start, false, 32, graph).size();
+      assertEquals(paths, baseline.discover(source, false, 32).size());
+
+      long baselineTime = time(() -> baseline.discover(source, false, 32));
+      long time = time(() -> discovery.discover(start, false, 32, graph));
+      long baselineAllocated = allocated(() -> baseline.discover(source, false, 32));
+      long allocated = allocated(() -> discovery.discover(start, false, 32, graph));
+      System.out.println(String.format("%-12s %7d %6d %16d %16d %16d %16d", "", size * size, paths,
+          baselineTime / 1000L, time / 1000L, baselineAllocated, allocated));
+    }
+  }
+
+  // Splitting one packet over the paths of a source, the double math distribute() used before against the fixed-point
+  // inverse losses. Both sum the weights of the paths first, as distribute() does for every packet.
+  @Test
+  void packetShares() {
+    Random random = new Random(42L);
+    System.out.println(String.format("%-12s %7s %16s %16s", "Shares", "paths", "double ns/op", "fixed ns/op"));
+    for (int count : new int[]{1, 8, 64}) {
+      EnergyNet.EnergyPath[][] sets = new EnergyNet.EnergyPath[256][count];
+      for (EnergyNet.EnergyPath[] energyPaths : sets) {
+        for (int j = 0; j < count; j++) {
+          energyPaths[j] = new EnergyNet.EnergyPath();
+          energyPaths[j].setLoss(EnergyNetFixedPointTest.randomLoss(random));
+        }
+      }
+      int[] sum = new int[1]; // Keeps the shares alive
+      long doubleTime = time(() -> {
+        for (EnergyNet.EnergyPath[] energyPaths : sets) {
+          double d = 0.0D;
+          for (EnergyNet.EnergyPath energyPath : energyPaths) {
+            d += 1.0D / energyPath.loss;
+          }
+          for (EnergyNet.EnergyPath energyPath : energyPaths) {
+            sum[0] += (int) Math.floor((double) Math.round(32.0D / d / energyPath.loss * 100000.0D) / 100000.0D);
+          }
+        }
+      });
+      long fixedTime = time(() -> {
+        for (EnergyNet.EnergyPath[] energyPaths : sets) {
+          long d = 0L;
+          for (EnergyNet.EnergyPath energyPath : energyPaths) {
+            d += energyPath.inverseLoss;
+          }
+          for (EnergyNet.EnergyPath energyPath : energyPaths) {
+            sum[0] += (int) (32L * energyPath.inverseLoss / d);
+          }
+        }
+      });
+      assertTrue(sum[0] >= 0);
+      System.out.println(String.format("%-12s %7d %16d %16d", "", count, doubleTime / sets.length,
+          fixedTime / sets.length));
+    }
+  }
+
+  // Average nanoseconds per run, after warming up for as long as it measures
+  private static long time(Runnable runnable) {
+    int runs = 0;
+    long start = System.nanoTime();
+    while (runs < 5 || System.nanoTime() - start < 500000000L) {
+      runnable.run();
+      runs++;
+    }
+    runs = Math.max(runs, 5);
+    start = System.nanoTime();
+    for (int n = 0; n < runs; n++) {
+      runnable.run();
+    }
+    return (System.nanoTime() - start) / runs;
+  }
+
+  // Average bytes allocated by the calling thread per run, -1 if the JVM doesn't count them
+  private static long allocated(Runnable runnable) {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+      return -1L;
+    }
+    com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+    long threadId = Thread.currentThread().getId();
+    int runs = 20;
+    long allocated = allocationMXBean.getThreadAllocatedBytes(threadId);
+    for (int n = 0; n < runs; n++) {
+      runnable.run();
+    }
+    return (allocationMXBean.getThreadAllocatedBytes(threadId) - allocated) / runs;
+  }
+}
@@ -0,0 +1,43 @@
+package ic2.common;
+
+import ic2.common.EnergyNetTestTiles.Cable;
+import ic2.common.EnergyNetTestTiles.NotifyingSink;
+import ic2.common.EnergyNetTestTiles.Source;
+import org.junit.jupiter.api.Test;
+
+import static ic2.common.EnergyNetTestTiles.at;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnergyNetDemandTest {
+  // A storage block filled by an inject, drained by its own tick and filled again, notifying every tick like
+  // TileEntityElectricBlock does
+  @Test
+  void demandReturnsAfterFillDrainRefill() {
+    EnergyNetGraph graph = new EnergyNetGraph(chain -> {
+    });
+    NotifyingSink sink = at(new NotifyingSink(), 2, 64, 0);
+    sink.capacity = 100;
+    graph.add(at(new Source(), 0, 64, 0));
+    graph.add(at(new Cable(), 1, 64, 0));
+    graph.add(sink);
+    EnergyNetGraph.Node node = graph.getNode(sink);
+    assertTrue(node.component.demandsEnergy());
+
+    for (int round = 0; round < 2; round++) {
+      sink.injectEnergy(null, 100); // Filled, EnergyNet.transmit updates the node
+      graph.setDemanding(node, sink.demandsEnergy());
+      tick(graph, sink);
+      assertFalse(node.component.demandsEnergy());
+
+      sink.energy -= 32; // Emitted
+      tick(graph, sink);
+      assertTrue(node.demanding);
+      assertTrue(node.component.demandsEnergy());
+    }
+  }
+
+  // What EnergyNet.onDemandChanged does with the graph
+  private static void tick(EnergyNetGraph graph, NotifyingSink sink) {
+    graph.setDemanding(graph.getNode(sink), sink.demandsEnergy());
+  }
+}
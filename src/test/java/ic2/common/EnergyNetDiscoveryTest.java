@@ -0,0 +1,96 @@
+package ic2.common;
+
+import ic2.common.EnergyNetTestTiles.Cable;
+import ic2.common.EnergyNetTestTiles.Sink;
+import ic2.common.EnergyNetTestTiles.Source;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static ic2.common.EnergyNetTestTiles.at;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnergyNetDiscoveryTest {
+  @Test
+  void findsSinkAlongCableLine() {
+    EnergyNetGraph graph = new EnergyNetGraph(chain -> {
+    });
+    Source source = at(new Source(), 0, 64, 0);
+    Sink sink = at(new Sink(), 11, 64, 0);
+    graph.add(source);
+    for (int x = 1; x <= 10; x++) {
+      graph.add(at(new Cable(), x, 64, 0));
+    }
+    graph.add(sink);
+
+    List<EnergyNet.EnergyPath> energyPaths =
+        new EnergyNetDiscovery().discover(graph.getNode(source), false, 32, graph);
+    assertEquals(1, energyPaths.size());
+    assertSame(sink, energyPaths.get(0).target);
+    assertEquals(2.0D, energyPaths.get(0).loss, 1.0E-9D);
+  }
+
+  @Test
+  void stopsAtMaxLoss() {
+    EnergyNetGraph graph = new EnergyNetGraph(chain -> {
+    });
+    Source source = at(new Source(), 0, 64, 0);
+    graph.add(source);
+    for (int x = 1; x <= 200; x++) {
+      graph.add(at(new Cable(), x, 64, 0));
+    }
+    graph.add(at(new Sink(), 201, 64, 0));
+
+    assertTrue(new EnergyNetDiscovery().discover(graph.getNode(source), false, 32, graph).isEmpty());
+  }
+
+  @Test
+  void prefersLowerLossRoute() {
+    EnergyNetGraph graph = new EnergyNetGraph(chain -> {
+    });
+    Source source = at(new Source(), 0, 64, 0);
+    Sink sink = at(new Sink(), 4, 64, 0);
+    graph.add(source);
+    for (int x = 1; x <= 3; x++) { // Direct line of lossy cables
+      Cable cable = at(new Cable(), x, 64, 0);
+      cable.conductionLoss = 1.0D;
+      graph.add(cable);
+    }
+    for (int x = 0; x <= 4; x++) { // Detour of cheap cables one block over
+      graph.add(at(new Cable(), x, 64, 1));
+    }
+    graph.add(sink);
+
+    List<EnergyNet.EnergyPath> energyPaths =
+        new EnergyNetDiscovery().discover(graph.getNode(source), false, 32, graph);
+    assertEquals(1, energyPaths.size());
+    assertEquals(1.0D, energyPaths.get(0).loss, 1.0E-9D);
+  }
+
+  @Test
+  void stopsAtChainsWithBlockedMembers() {
+    EnergyNetGraph graph = new EnergyNetGraph(chain -> {
+    });
+    Source source = at(new Source(), 0, 64, 0);
+    graph.add(source);
+    Cable[] cables = new Cable[10];
+    for (int x = 1; x <= 10; x++) {
+      cables[x - 1] = at(new Cable(), x, 64, 0);
+      graph.add(cables[x - 1]);
+    }
+    graph.add(at(new Sink(), 11, 64, 0));
+    EnergyNetDiscovery discovery = new EnergyNetDiscovery();
+    EnergyNetGraph.Node start = graph.getNode(source);
+    EnergyNetGraph.Node middle = graph.getNode(cables[5]);
+    assertEquals(1, discovery.discover(start, false, 32, graph).size());
+    assertNotNull(middle.chain);
+
+    graph.setUnloaded(middle, true);
+    assertTrue(discovery.discover(start, false, 32, graph).isEmpty());
+    assertTrue(discovery.boundaryReached());
+    graph.setUnloaded(middle, false);
+    assertEquals(1, discovery.discover(start, false, 32, graph).size());
+    graph.setRemoving(middle);
+    assertTrue(discovery.discover(start, false, 32, graph).isEmpty());
+  }
+}
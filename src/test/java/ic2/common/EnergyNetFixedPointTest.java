@@ -0,0 +1,82 @@
+package ic2.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnergyNetFixedPointTest {
+  @Test
+  void lossFloorMatchesFloor() {
+    Random random = new Random(7L);
+    for (int n = 0; n < 100000; n++) {
+      double loss = randomLoss(random);
+      EnergyNet.EnergyPath energyPath = new EnergyNet.EnergyPath();
+      energyPath.setLoss(loss);
+      assertEquals((int) Math.floor(loss), energyPath.lossFloor);
+      assertTrue(energyPath.inverseLoss > 0L);
+    }
+  }
+
+  // Shares from the fixed-point inverse losses against the double math distribute() used before
+  @Test
+  void sharesMatchDoubleMath() {
+    Random random = new Random(42L);
+    int exact = 0;
+    int total = 0;
+    for (int round = 0; round < 20000; round++) {
+      int count = 1 + random.nextInt(8);
+      int i = 1 + random.nextInt(random.nextBoolean() ? 32 : 8192);
+      EnergyNet.EnergyPath[] energyPaths = new EnergyNet.EnergyPath[count];
+      double d = 0.0D;
+      long fixedD = 0L;
+      double maxLoss = 0.0D;
+      for (int j = 0; j < count; j++) {
+        energyPaths[j] = new EnergyNet.EnergyPath();
+        energyPaths[j].setLoss(randomLoss(random));
+        d += 1.0D / energyPaths[j].loss;
+        fixedD += energyPaths[j].inverseLoss;
+        maxLoss = Math.max(maxLoss, energyPaths[j].loss);
+      }
+      // Rounding 2^20/loss to a long is off by at most half a unit for every path and for the sum
+      double tolerance = 1.0D + i * maxLoss / EnergyNet.EnergyPath.inverseLossScale;
+      int sum = 0;
+      for (EnergyNet.EnergyPath energyPath : energyPaths) {
+        int previous = (int) Math.floor((double) Math.round((double) i / d / energyPath.loss * 100000.0D) / 100000.0D);
+        int share = (int) (i * energyPath.inverseLoss / fixedD);
+        assertTrue(Math.abs(share - previous) <= tolerance, share + " vs " + previous + " for " + i + " EU");
+        assertTrue(share >= 0);
+        sum += share;
+        total++;
+        if (share == previous) {
+          exact++;
+        }
+      }
+      assertTrue(sum <= i, "shares exceed the packet");
+    }
+    assertTrue(exact >= total * 0.99D, exact + " of " + total + " shares matched exactly");
+  }
+
+  @Test
+  void equalLossesSplitEvenly() {
+    EnergyNet.EnergyPath a = new EnergyNet.EnergyPath();
+    EnergyNet.EnergyPath b = new EnergyNet.EnergyPath();
+    a.setLoss(0.375D);
+    b.setLoss(0.375D);
+    long d = a.inverseLoss + b.inverseLoss;
+    assertEquals(16, (int) (32 * a.inverseLoss / d));
+    assertEquals(16, (int) (32 * b.inverseLoss / d));
+  }
+
+  // Path losses as discovery produces them, sums of the per block conduction losses of TileEntityCable
+  static double randomLoss(Random random) {
+    double[] conductionLosses = {0.025D, 0.2D, 0.3D, 0.4D, 0.45D, 0.5D, 0.8D, 0.9D, 0.95D, 1.0D};
+    double loss = 0.0D;
+    int length = 1 + random.nextInt(64);
+    for (int n = 0; n < length; n++) {
+      loss += conductionLosses[random.nextInt(conductionLosses.length)];
+    }
+    return loss;
+  }
+}
@@ -0,0 +1,79 @@
+package ic2.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnergyNetLossHeapTest {
+  @Test
+  void pollsInLossOrder() {
+    EnergyNetLossHeap lossHeap = new EnergyNetLossHeap();
+    lossHeap.offer(EnergyNetGraph.pack(0, 64, 0), 3.0D);
+    lossHeap.offer(EnergyNetGraph.pack(1, 64, 0), 1.0D);
+    lossHeap.offer(EnergyNetGraph.pack(2, 64, 0), 2.0D);
+    assertEquals(1.0D, lossHeap.peekLoss(), 0.0D);
+    assertEquals(EnergyNetGraph.pack(1, 64, 0), lossHeap.poll());
+    assertEquals(EnergyNetGraph.pack(2, 64, 0), lossHeap.poll());
+    assertEquals(EnergyNetGraph.pack(0, 64, 0), lossHeap.poll());
+    assertTrue(lossHeap.isEmpty());
+  }
+
+  @Test
+  void decreasesKeyInPlace() {
+    EnergyNetLossHeap lossHeap = new EnergyNetLossHeap();
+    long a = EnergyNetGraph.pack(0, 64, 0);
+    long b = EnergyNetGraph.pack(0, 64, 1);
+    assertTrue(lossHeap.offer(a, 5.0D));
+    assertTrue(lossHeap.offer(b, 4.0D));
+    assertFalse(lossHeap.offer(a, 6.0D)); // Higher loss is ignored
+    assertTrue(lossHeap.offer(a, 1.0D));
+    assertEquals(a, lossHeap.poll());
+    assertEquals(b, lossHeap.poll());
+    assertTrue(lossHeap.isEmpty());
+  }
+
+  @Test
+  void neverQueuesPolledPositionsAgain() {
+    EnergyNetLossHeap lossHeap = new EnergyNetLossHeap();
+    long a = EnergyNetGraph.pack(-5, 10, 7);
+    lossHeap.offer(a, 2.0D);
+    assertEquals(a, lossHeap.poll());
+    assertFalse(lossHeap.offer(a, 0.5D));
+    assertTrue(lossHeap.isEmpty());
+
+    lossHeap.clear();
+    assertTrue(lossHeap.offer(a, 0.5D));
+  }
+
+  // Random offers and decreases against a reference of the lowest loss per position
+  @Test
+  void matchesReference() {
+    Random random = new Random(42L);
+    EnergyNetLossHeap lossHeap = new EnergyNetLossHeap();
+    for (int round = 0; round < 20; round++) {
+      lossHeap.clear();
+      Map<Long, Double> positionToLossMap = new HashMap<>();
+      int count = 1 + random.nextInt(2000);
+      for (int n = 0; n < count; n++) {
+        long position = EnergyNetGraph.pack(random.nextInt(64) - 32, random.nextInt(128), random.nextInt(64) - 32);
+        double loss = random.nextInt(1000) / 10.0D;
+        Double previous = positionToLossMap.get(position);
+        assertEquals(previous == null || loss < previous, lossHeap.offer(position, loss));
+        if (previous == null || loss < previous) {
+          positionToLossMap.put(position, loss);
+        }
+      }
+      double last = -1.0D;
+      while (!lossHeap.isEmpty()) {
+        double loss = lossHeap.peekLoss();
+        long position = lossHeap.poll();
+        assertTrue(loss >= last, "polled out of order");
+        assertEquals(positionToLossMap.remove(position), loss, 0.0D);
+        last = loss;
+      }
+      assertTrue(positionToLossMap.isEmpty());
+    }
+  }
+}
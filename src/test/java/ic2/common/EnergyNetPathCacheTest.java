@@ -0,0 +1,81 @@
+package ic2.common;
+
+import ic2.common.EnergyNetTestTiles.Cable;
+import ic2.common.EnergyNetTestTiles.Sink;
+import ic2.common.EnergyNetTestTiles.Source;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static ic2.common.EnergyNetTestTiles.at;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnergyNetPathCacheTest {
+  @Test
+  void restoresChainsByTheirEnds() throws IOException {
+    EnergyNetGraph graph = new EnergyNetGraph(chain -> {
+    });
+    Source source = at(new Source(), 0, 64, 0);
+    Sink sink = at(new Sink(), 21, 64, 0);
+    graph.add(source);
+    for (int x = 1; x <= 20; x++) {
+      graph.add(at(new Cable(), x, 64, 0));
+    }
+    graph.add(sink);
+    List<EnergyNet.EnergyPath> energyPaths =
+        new EnergyNetDiscovery().discover(graph.getNode(source), false, 32, graph);
+    assertEquals(1, energyPaths.size());
+    assertEquals(1, energyPaths.get(0).chains.length);
+
+    File file = File.createTempFile("ic2_energynet", ".dat");
+    try {
+      new EnergyNetPathCache(file).save(null, graph, Collections.singletonMap(source, energyPaths));
+      EnergyNetPathCache pathCache = new EnergyNetPathCache(file);
+      pathCache.load();
+      assertTrue(pathCache.contains(EnergyNetGraph.pack(source)));
+
+      List<EnergyNet.EnergyPath> restored = pathCache.restore(source, graph);
+      assertNotNull(restored);
+      assertEquals(1, restored.size());
+      assertSame(sink, restored.get(0).target);
+      assertSame(energyPaths.get(0).chains[0], restored.get(0).chains[0]);
+      assertEquals(energyPaths.get(0).loss, restored.get(0).loss, 0.0D);
+      assertArrayEquals(energyPaths.get(0).conductors, restored.get(0).conductors);
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  void rejectsChangedChains() throws IOException {
+    EnergyNetGraph graph = new EnergyNetGraph(chain -> {
+    });
+    Source source = at(new Source(), 0, 64, 0);
+    graph.add(source);
+    for (int x = 1; x <= 20; x++) {
+      graph.add(at(new Cable(), x, 64, 0));
+    }
+    graph.add(at(new Sink(), 21, 64, 0));
+    List<EnergyNet.EnergyPath> energyPaths =
+        new EnergyNetDiscovery().discover(graph.getNode(source), false, 32, graph);
+
+    File file = File.createTempFile("ic2_energynet", ".dat");
+    try {
+      new EnergyNetPathCache(file).save(null, graph, Collections.singletonMap(source, energyPaths));
+      Cable cable = at(new Cable(), 10, 64, 0); // Replaces a cable in the middle of the chain
+      cable.conductionLoss = 0.5D;
+      graph.add(cable);
+      EnergyNetPathCache pathCache = new EnergyNetPathCache(file);
+      pathCache.load();
+      assertNull(pathCache.restore(source, graph));
+      assertFalse(pathCache.contains(EnergyNetGraph.pack(source))); // Discovered live from now on
+    }
+    finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package ic2.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnergyNetPositionMapTest {
+  @Test
+  void putGetRemove() {
+    EnergyNetPositionMap<String> map = new EnergyNetPositionMap<>();
+    long a = EnergyNetGraph.pack(0, 0, 0);
+    long b = EnergyNetGraph.pack(-1, 255, -1);
+    assertNull(map.put(a, "a"));
+    assertNull(map.put(b, "b"));
+    assertEquals("a", map.put(a, "c"));
+    assertEquals(2, map.size());
+    assertEquals("c", map.get(a));
+    assertTrue(map.containsKey(b));
+    assertEquals("b", map.remove(b));
+    assertNull(map.remove(b));
+    assertFalse(map.containsKey(b));
+    assertEquals(1, map.size());
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertNull(map.get(a));
+  }
+
+  @Test
+  void packsNegativeCoordinates() {
+    long position = EnergyNetGraph.pack(-30000000 >> 4, 200, 29999999 >> 4);
+    assertEquals(-30000000 >> 4, EnergyNetGraph.unpackX(position));
+    assertEquals(200, EnergyNetGraph.unpackY(position));
+    assertEquals(29999999 >> 4, EnergyNetGraph.unpackZ(position));
+    assertTrue(position != EnergyNetPositionMap.emptyKey);
+  }
+
+  // Random puts and removes against a HashMap, removals in long probe chains exercise the backward shift
+  @Test
+  void matchesReference() {
+    Random random = new Random(7L);
+    EnergyNetPositionMap<Integer> map = new EnergyNetPositionMap<>();
+    Map<Long, Integer> reference = new HashMap<>();
+    for (int n = 0; n < 200000; n++) {
+      long position = EnergyNetGraph.pack(random.nextInt(40) - 20, random.nextInt(16), random.nextInt(40) - 20);
+      if (random.nextInt(3) == 0) {
+        assertEquals(reference.remove(position), map.remove(position));
+      }
+      else {
+        assertEquals(reference.put(position, n), map.put(position, n));
+      }
+      if (n % 1000 == 0) {
+        assertEquals(reference.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : reference.entrySet()) {
+          assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+      }
+    }
+    long[] keys = map.keys();
+    Arrays.sort(keys);
+    long[] expected = new long[reference.size()];
+    int i = 0;
+    for (long key : reference.keySet()) {
+      expected[i++] = key;
+    }
+    Arrays.sort(expected);
+    assertArrayEquals(expected, keys);
+    List<Integer> values = new ArrayList<>();
+    map.forEachValue(values::add);
+    assertEquals(reference.size(), values.size());
+    assertTrue(values.containsAll(reference.values()));
+  }
+}
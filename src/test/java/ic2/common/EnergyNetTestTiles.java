@@ -0,0 +1,95 @@
+package ic2.common;
+
+import ic2.api.*;
+import net.minecraft.server.TileEntity;
+
+// Minimal energy tiles for building networks without a world
+final class EnergyNetTestTiles {
+  private EnergyNetTestTiles() {
+  }
+
+  static <T extends TileEntity> T at(T tileEntity, int x, int y, int z) {
+    tileEntity.x = x;
+    tileEntity.y = y;
+    tileEntity.z = z;
+    return tileEntity;
+  }
+
+  static class Cable extends TileEntity implements IEnergyConductor {
+    double conductionLoss = 0.2D;
+
+    public boolean isAddedToEnergyNet() {
+      return true;
+    }
+
+    public boolean acceptsEnergyFrom(TileEntity tileEntity, Direction direction) {
+      return true;
+    }
+
+    public boolean emitsEnergyTo(TileEntity tileEntity, Direction direction) {
+      return true;
+    }
+
+    public double getConductionLoss() {
+      return conductionLoss;
+    }
+
+    public int getInsulationEnergyAbsorption() {
+      return 32;
+    }
+
+    public int getInsulationBreakdownEnergy() {
+      return 128;
+    }
+
+    public int getConductorBreakdownEnergy() {
+      return 160;
+    }
+
+    public void removeInsulation() {
+    }
+
+    public void removeConductor() {
+    }
+  }
+
+  static class Source extends TileEntity implements IEnergySource {
+    public boolean isAddedToEnergyNet() {
+      return true;
+    }
+
+    public boolean emitsEnergyTo(TileEntity tileEntity, Direction direction) {
+      return true;
+    }
+
+    public int getMaxEnergyOutput() {
+      return 32;
+    }
+  }
+
+  static class Sink extends TileEntity implements IEnergySink {
+    int energy = 0;
+    int capacity = Integer.MAX_VALUE;
+
+    public boolean isAddedToEnergyNet() {
+      return true;
+    }
+
+    public boolean acceptsEnergyFrom(TileEntity tileEntity, Direction direction) {
+      return true;
+    }
+
+    public boolean demandsEnergy() {
+      return energy < capacity;
+    }
+
+    public int injectEnergy(Direction direction, int i) {
+      int taken = Math.min(i, capacity - energy);
+      energy += taken;
+      return i - taken;
+    }
+  }
+
+  static class NotifyingSink extends Sink implements IEnergyDemandNotifier {
+  }
+}
@@ -0,0 +1,237 @@
+package ic2.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FieldUpdateCodecTest {
+  @Test
+  void varIntsRoundTrip() throws IOException {
+    int[] values = {0, 1, -1, 63, -64, 64, 127, 128, 300, -300, 1 << 20, Integer.MAX_VALUE, Integer.MIN_VALUE};
+    ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream();
+    DataOutputStream dataoutputstream = new DataOutputStream(bytearrayoutputstream);
+    for (int i : values) {
+      FieldUpdateCodec.writeSignedVarInt(dataoutputstream, i);
+      FieldUpdateCodec.writeVarInt(dataoutputstream, i);
+    }
+    DataInputStream datainputstream = new DataInputStream(new ByteArrayInputStream(bytearrayoutputstream.toByteArray()));
+    for (int i : values) {
+      assertEquals(i, FieldUpdateCodec.readSignedVarInt(datainputstream));
+      assertEquals(i, FieldUpdateCodec.readVarInt(datainputstream));
+    }
+  }
+
+  @Test
+  void compactPacketsDecodeLikeLegacyOnes() throws IOException {
+    List<Field> fields = syntheticFlush(new Random(1L));
+    List<String> fieldNames = assignIds(fields);
+    FieldUpdateCodec.Decoder decoder = new FieldUpdateCodec.Decoder();
+    BitSet fieldIds = new BitSet();
+    fieldIds.set(0, fieldNames.size());
+    assertTrue(decoder.decode(FieldUpdateCodec.encodeFieldNames(fieldIds, fieldNames)).isEmpty());
+
+    List<FieldUpdateCodec.Update> legacy = decoder.decode(encode(fields, -1, false));
+    List<FieldUpdateCodec.Update> compact = decoder.decode(encode(fields, -1, true));
+    assertEquals(fields.size(), legacy.size());
+    assertEquals(fields.size(), compact.size());
+    for (int n = 0; n < fields.size(); n++) {
+      Field field = fields.get(n);
+      for (FieldUpdateCodec.Update update : Arrays.asList(legacy.get(n), compact.get(n))) {
+        assertEquals(-1, update.dimension);
+        assertEquals(field.x, update.x);
+        assertEquals(field.y, update.y);
+        assertEquals(field.z, update.z);
+        assertEquals(field.name, update.field);
+        if (field.value instanceof short[]) {
+          assertArrayEquals((short[]) field.value, (short[]) update.value);
+        }
+        else {
+          assertEquals(field.value, update.value);
+        }
+      }
+    }
+  }
+
+  @Test
+  void rejectsUndefinedFieldIds() throws IOException {
+    Field field = new Field(5, 64, -7, "active", true);
+    field.id = 3;
+    byte[] abyte0 = encode(Collections.singletonList(field), 0, true);
+    assertThrows(IOException.class, () -> new FieldUpdateCodec.Decoder().decode(abyte0));
+  }
+
+  // Compressed size of packet 0 and 5 for a synthetic flush of a busy region and for a single toggled machine
+  @Test
+  void compactPacketsAreSmaller() throws IOException {
+    Random random = new Random(2L);
+    List<Field> flush = syntheticFlush(random);
+    assignIds(flush);
+    int legacy = encode(flush, 0, false).length;
+    int compact = encode(flush, 0, true).length;
+    List<Field> toggle = Collections.singletonList(flush.get(0));
+    int legacyToggle = encode(toggle, 0, false).length;
+    int compactToggle = encode(toggle, 0, true).length;
+    assertTrue(compact < legacy);
+    assertTrue(compactToggle < legacyToggle);
+  }
+
+  @Test
+  void arrayDiffsApplyToTheLastValue() throws IOException {
+    Object[][] values = {
+        {new short[]{1, 2, 3, 4}, new short[]{1, 9, 3, 4}},
+        {new int[]{0, 0, 0, 0, 0, 70000}, new int[]{5, 0, 0, 0, 0, -1}},
+        {new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, new byte[]{1, 2, 3, 4, 5, 6, 7, 8}}};
+    for (Object[] value : values) {
+      FieldUpdateCodec.Decoder decoder = new FieldUpdateCodec.Decoder();
+      decoder.decode(FieldUpdateCodec.encodeFieldNames(bitSet(0), Collections.singletonList("custumData")));
+      Field first = new Field(-20, 70, 33, "custumData", value[0]);
+      Field second = new Field(-20, 70, 33, "custumData", value[1]);
+      second.base = first.data();
+      assertEquals(126, second.data()[0] & 0xFF); // Written as diff
+
+      decoder.decode(encode(Collections.singletonList(first), 0, true));
+      Object decoded = decoder.decode(encode(Collections.singletonList(second), 0, true)).get(0).value;
+      assertArrayEquals(new Field(0, 0, 0, "", value[1]).data(), new Field(0, 0, 0, "", decoded).data());
+    }
+  }
+
+  @Test
+  void rejectsDiffsWithoutPreviousValue() throws IOException {
+    Field first = new Field(1, 2, 3, "custumData", new short[]{1, 2, 3, 4});
+    Field second = new Field(1, 2, 3, "custumData", new short[]{1, 2, 3, 5});
+    second.base = first.data();
+    FieldUpdateCodec.Decoder decoder = new FieldUpdateCodec.Decoder();
+    decoder.decode(FieldUpdateCodec.encodeFieldNames(bitSet(0), Collections.singletonList("custumData")));
+    byte[] abyte0 = encode(Collections.singletonList(second), 0, true);
+    assertThrows(IOException.class, () -> decoder.decode(abyte0));
+  }
+
+  @Test
+  void sendsArraysWholeIfDiffsDontPay() throws IOException {
+    byte[] base = new Field(0, 0, 0, "a", new short[]{1, 2, 3, 4}).data();
+    assertNull(FieldUpdateCodec.encodeDiff(base, new Field(0, 0, 0, "a", new short[]{5, 6, 7, 8}).data()));
+    assertNull(FieldUpdateCodec.encodeDiff(base, new Field(0, 0, 0, "a", new short[]{1, 2, 3}).data()));
+    assertNull(FieldUpdateCodec.encodeDiff(base, new Field(0, 0, 0, "a", new int[]{1, 2}).data()));
+    assertNull(FieldUpdateCodec.encodeDiff(base, new Field(0, 0, 0, "a", 7).data()));
+  }
+
+  // Made up crops growing: the same region sends size and custumData again with one element of each array changed
+  @Test
+  void arrayDiffsAreSmaller() throws IOException {
+    Random random = new Random(3L);
+    List<Field> crops = new ArrayList<>();
+    List<Field> grown = new ArrayList<>();
+    for (int n = 0; n < 24; n++) {
+      int x = 64 * 3 + random.nextInt(64);
+      int z = -64 * 2 + random.nextInt(64);
+      short[] custumData = new short[16];
+      custumData[random.nextInt(16)] = (short) random.nextInt(100);
+      Field field = new Field(x, 64, z, "custumData", custumData);
+      short[] changed = custumData.clone();
+      changed[random.nextInt(16)] += 1 + random.nextInt(10);
+      crops.add(field);
+      grown.add(new Field(x, 64, z, "size", (byte) random.nextInt(5)));
+      grown.add(new Field(x, 64, z, "custumData", changed));
+    }
+    assignIds(grown);
+    int whole = encode(grown, 0, true).length;
+    for (int n = 0; n < crops.size(); n++) {
+      grown.get(2 * n + 1).base = crops.get(n).data();
+    }
+    int diffed = encode(grown, 0, true).length;
+    assertTrue(diffed < whole);
+  }
+
+  private static BitSet bitSet(int id) {
+    BitSet bitSet = new BitSet();
+    bitSet.set(id);
+    return bitSet;
+  }
+
+  // Made up flush of one 4x4 chunk region, not recorded traffic: machines toggling active, crops sending all of their
+  // fields and reactors their output
+  static List<Field> syntheticFlush(Random random) {
+    List<Field> fields = new ArrayList<>();
+    int baseX = 64 * 3;
+    int baseZ = -64 * 2;
+    for (int n = 0; n < 48; n++) {
+      fields.add(new Field(baseX + random.nextInt(64), 60 + random.nextInt(10), baseZ + random.nextInt(64), "active",
+          random.nextBoolean()));
+    }
+    for (int n = 0; n < 24; n++) {
+      int x = baseX + random.nextInt(64);
+      int z = baseZ + random.nextInt(64);
+      short[] custumData = new short[16];
+      custumData[random.nextInt(16)] = (short) random.nextInt(100);
+      fields.add(new Field(x, 64, z, "id", (short) random.nextInt(30)));
+      fields.add(new Field(x, 64, z, "size", (byte) random.nextInt(5)));
+      fields.add(new Field(x, 64, z, "upgraded", false));
+      fields.add(new Field(x, 64, z, "custumData", custumData));
+    }
+    for (int n = 0; n < 4; n++) {
+      fields.add(new Field(baseX + random.nextInt(64), 40, baseZ + random.nextInt(64), "output",
+          (short) random.nextInt(400)));
+    }
+    Collections.shuffle(fields, random); // The server walks the dirty fields of a region in hash order
+    return fields;
+  }
+
+  static List<String> assignIds(List<Field> fields) {
+    List<String> fieldNames = new ArrayList<>();
+    for (Field field : fields) {
+      field.id = fieldNames.indexOf(field.name);
+      if (field.id < 0) {
+        field.id = fieldNames.size();
+        fieldNames.add(field.name);
+      }
+    }
+    return fieldNames;
+  }
+
+  // Built the way NetworkManager.FieldUpdate builds its packets
+  static byte[] encode(List<Field> fields, int dimension, boolean compact) throws IOException {
+    ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream();
+    bytearrayoutputstream.write(compact ? 5 : 0);
+    GZIPOutputStream gzipoutputstream = new GZIPOutputStream(bytearrayoutputstream);
+    DataOutputStream dataoutputstream = new DataOutputStream(gzipoutputstream);
+    FieldUpdateCodec.Encoder encoder = new FieldUpdateCodec.Encoder(dataoutputstream, dimension, compact);
+    for (Field field : fields) {
+      encoder.writeField(field.x, field.y, field.z, field.name, field.id, field.data());
+    }
+    dataoutputstream.close();
+    return bytearrayoutputstream.toByteArray();
+  }
+
+  static class Field {
+    final int x;
+    final int y;
+    final int z;
+    final String name;
+    final Object value;
+    int id = 0;
+    byte[] base = null; // Value the decoder has, the field is written as diff against it if that is smaller
+
+    Field(int x, int y, int z, String name, Object value) {
+      this.x = x;
+      this.y = y;
+      this.z = z;
+      this.name = name;
+      this.value = value;
+    }
+
+    byte[] data() throws IOException {
+      ByteArrayOutputStream bytearrayoutputstream = new ByteArrayOutputStream();
+      DataEncoder.encode(new DataOutputStream(bytearrayoutputstream), value);
+      byte[] diff = base == null ? null : FieldUpdateCodec.encodeDiff(base, bytearrayoutputstream.toByteArray());
+      return diff != null ? diff : bytearrayoutputstream.toByteArray();
+    }
+  }
+}
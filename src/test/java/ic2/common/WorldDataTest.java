@@ -0,0 +1,80 @@
+package ic2.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the registry behind WorldData with plain objects standing in for worlds, each test with its own registry
+class WorldDataTest {
+  private static final int ticksUntilReleased = 2 * 1200 + 1; // releaseDelay plus one releaseCheckInterval
+
+  private final List<Object> loadedWorlds = new ArrayList<>(); // What DimensionManager would return
+  private final WorldData.Registry<Object> registry = new WorldData.Registry<>(() -> loadedWorlds);
+
+  @Test
+  void keepsWorldsIdleForLessThanTheDelay() {
+    Object ticking = new Object();
+    Object idle = new Object();
+    registry.get(idle);
+    for (int n = 0; n < 1000; n++) {
+      registry.onTick(ticking);
+    }
+    assertNotNull(registry.peek(idle));
+    assertNotNull(registry.peek(ticking));
+  }
+
+  @Test
+  void keepsLoadedWorldsThatStoppedTicking() {
+    Object ticking = new Object();
+    Object loaded = new Object();
+    loadedWorlds.add(loaded);
+    registry.onTick(loaded);
+    for (int n = 0; n < ticksUntilReleased; n++) {
+      registry.onTick(ticking);
+    }
+    assertNotNull(registry.peek(loaded));
+  }
+
+  // Worlds that left DimensionManager and stopped ticking must not be kept reachable through their data
+  @Test
+  void releasesWorldsThatStoppedTicking() throws InterruptedException {
+    Object ticking = new Object();
+    Object unloaded = new Object();
+    WorldData worldData = registry.get(unloaded);
+    worldData.singleTickCallbacks.add(new Object());
+    worldData.regionToFieldsToUpdateMap.put(0L, new HashSet());
+    WeakReference<Object> reference = new WeakReference<>(unloaded);
+    unloaded = null;
+
+    for (int n = 0; n < ticksUntilReleased; n++) {
+      registry.onTick(ticking);
+    }
+    assertNull(registry.peek(reference.get()));
+    assertTrue(worldData.singleTickCallbacks.isEmpty());
+    assertTrue(worldData.regionToFieldsToUpdateMap.isEmpty());
+    assertNotNull(registry.peek(ticking)); // Still ticking, so never released although it isn't loaded
+
+    worldData = null;
+    for (int n = 0; n < 50 && reference.get() != null; n++) {
+      System.gc();
+      Thread.sleep(10L);
+    }
+    assertNull(reference.get(), "released world is still reachable");
+  }
+
+  @Test
+  void resetReleasesAllWorlds() {
+    Object world = new Object();
+    loadedWorlds.add(world);
+    WorldData worldData = registry.onTick(world);
+    worldData.singleTickCallbacks.add(new Object());
+    registry.reset();
+    assertNull(registry.peek(world));
+    assertTrue(worldData.singleTickCallbacks.isEmpty());
+  }
+}